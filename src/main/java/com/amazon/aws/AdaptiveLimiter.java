@@ -0,0 +1,262 @@
+package com.amazon.aws;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Limits the number of emails in flight adapting the limit to the observed
+ * latency (gradient) and to the throttling responses (multiplicative decrease).
+ *
+ * Two averages of the latency are kept: a short one, following the current
+ * conditions, and a long one, following the latency without load. While the
+ * short average stays close to the long one the limit grows additively, once
+ * the short average grows beyond the tolerance the limit is reduced by their
+ * ratio. A throttling response cuts
+ * the limit by {@link #BACKOFF_RATIO}, ignoring the responses of emails started
+ * before the last cut, so a burst of throttling responses cuts it only once.
+ *
+ * Emails wait for a permit (see {@link #acquire()}) before being sent and give
+ * it back once finished (see {@link #release()}). A permit granted to an email
+ * cancelled before getting it is given back by the limiter.
+ */
+public class AdaptiveLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    /**
+     * Ratio between the short and long latency averages accepted before the
+     * limit is reduced.
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * Minimum ratio the limit is reduced by because of latency growth.
+     */
+    private static final double MIN_GRADIENT = 0.5;
+
+    /**
+     * Emails in flight added to the limit on each email sent, before smoothing.
+     */
+    private static final double INCREASE = 1.0;
+
+    /**
+     * Ratio the limit is reduced by on a throttling response.
+     */
+    private static final double BACKOFF_RATIO = 0.7;
+
+    /**
+     * Weight of the new limit over the current one.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Weight of each latency in the short and long averages.
+     */
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.001;
+
+    /**
+     * States of a permit: waiting for the limit, granted but not yet got by the
+     * email, got by the email (it must give it back) and cancelled.
+     */
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int TAKEN = 2;
+    private static final int CANCELLED = 3;
+
+    /**
+     * Permit asked for by an email.
+     */
+    private static final class Permit {
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        MonoSink<Long> sink;
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Deque<Permit> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+    private double shortLatency = 0;
+    private double longLatency = 0;
+    private long lastBackoffNanos = Long.MIN_VALUE;
+    private int peakLimit;
+    private int throttled = 0;
+
+    /**
+     * Create a new limiter.
+     *
+     * @param initialLimit Initial number of emails in flight
+     * @param maxLimit     Maximum number of emails in flight
+     */
+    public AdaptiveLimiter(int initialLimit, int maxLimit) {
+        this.minLimit = 1;
+        this.maxLimit = Math.max(maxLimit, minLimit);
+        this.limit = Math.min(Math.max(initialLimit, minLimit), this.maxLimit);
+        this.peakLimit = (int) limit;
+    }
+
+    /**
+     * Wait for a permit to send an email. Once the email has finished the
+     * permit must be given back with {@link #release()}. When the subscription
+     * is cancelled before the permit is got, it is given back by the limiter.
+     *
+     * @return {@link Mono} that emits the time (see {@link System#nanoTime()})
+     *         the permit was got
+     */
+    public Mono<Long> acquire() {
+        return Mono.defer(() -> {
+            Permit permit = new Permit();
+            return Mono.<Long>create(sink -> {
+                synchronized (this) {
+                    permit.sink = sink;
+                    if (permit.state.get() != WAITING) {
+                        // Cancelled already
+                        return;
+                    }
+                    if (inFlight >= (int) limit) {
+                        waiters.add(permit);
+                        return;
+                    }
+                    inFlight++;
+                    permit.state.set(GRANTED);
+                }
+                sink.success(System.nanoTime());
+            }).filter(acquired -> permit.state.compareAndSet(GRANTED, TAKEN)).doOnCancel(() -> cancel(permit));
+        });
+    }
+
+    /**
+     * Give back a permit got with {@link #acquire()}.
+     */
+    public void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        wakeUp();
+    }
+
+    /**
+     * Record the latency of an email sent successfully, adapting the limit.
+     *
+     * @param latencyNanos Time taken to send the email in nanoseconds
+     */
+    public void onSuccess(long latencyNanos) {
+        synchronized (this) {
+            if (longLatency == 0) {
+                shortLatency = latencyNanos;
+                longLatency = latencyNanos;
+            } else {
+                shortLatency += (latencyNanos - shortLatency) * SHORT_WEIGHT;
+                longLatency += (latencyNanos - longLatency) * LONG_WEIGHT;
+                // The long average follows the latency down quickly, not up
+                longLatency = Math.min(longLatency, Math.max(shortLatency, latencyNanos));
+            }
+            double gradient = Math.max(Math.min(TOLERANCE * longLatency / shortLatency, 1.0), MIN_GRADIENT);
+            double newLimit = limit * gradient + INCREASE;
+            setLimit(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+        }
+        wakeUp();
+    }
+
+    /**
+     * Record a throttling response, cutting the limit.
+     *
+     * @param acquiredNanos Time the permit of the throttled email was got
+     */
+    public synchronized void onThrottled(long acquiredNanos) {
+        throttled++;
+        if (acquiredNanos <= lastBackoffNanos) {
+            return;
+        }
+        lastBackoffNanos = System.nanoTime();
+        setLimit(limit * BACKOFF_RATIO);
+        logger.debug("Throttled, concurrency limit reduced to {}", (int) limit);
+    }
+
+    /**
+     * Get the current maximum number of emails in flight.
+     *
+     * @return Current limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the highest limit reached.
+     *
+     * @return Peak limit
+     */
+    public synchronized int getPeakLimit() {
+        return peakLimit;
+    }
+
+    /**
+     * Get the maximum number of emails in flight the limit can grow to.
+     *
+     * @return Maximum limit
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Get the number of throttling responses recorded.
+     *
+     * @return Throttling responses
+     */
+    public synchronized int getThrottled() {
+        return throttled;
+    }
+
+    private void setLimit(double newLimit) {
+        limit = Math.min(Math.max(newLimit, minLimit), maxLimit);
+        peakLimit = Math.max(peakLimit, (int) limit);
+    }
+
+    /**
+     * Cancel a permit: stop waiting for it, or give it back when it was granted
+     * but the email did not get it.
+     */
+    private void cancel(Permit permit) {
+        synchronized (this) {
+            if (permit.state.compareAndSet(WAITING, CANCELLED)) {
+                waiters.remove(permit);
+                return;
+            }
+        }
+        if (permit.state.compareAndSet(GRANTED, CANCELLED)) {
+            release();
+        }
+    }
+
+    /**
+     * Give permits to the waiting emails while the limit allows it. Emails are
+     * woken up out of the lock, as they may start sending in the current thread.
+     */
+    private void wakeUp() {
+        List<MonoSink<Long>> woken = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < (int) limit && waiters.isEmpty() == false) {
+                Permit permit = waiters.poll();
+                if (permit.state.compareAndSet(WAITING, GRANTED)) {
+                    inFlight++;
+                    woken.add(permit.sink);
+                }
+            }
+        }
+        long now = System.nanoTime();
+        for (MonoSink<Long> sink : woken) {
+            sink.success(now);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.amazon.aws;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+
+/**
+ * Bounded cache of parsed and validated {@link InternetAddress} objects, so
+ * addresses repeated by several emails are parsed only once.
+ *
+ * When the cache is full the least recently used entry is evicted. Only valid
+ * addresses are cached.
+ *
+ * Entries are split into segments by the hash of the address, each one with
+ * its own least recently used order and lock, so concurrent senders do not
+ * contend on a single lock (lookups reorder the entries, so they need it too).
+ */
+public class AddressCache {
+    /**
+     * Default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static final int SEGMENTS = 16;
+
+    private final List<Map<String, InternetAddress[]>> segments = new ArrayList<>(SEGMENTS);
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize Maximum number of entries, split evenly among the segments
+     */
+    public AddressCache(int maxSize) {
+        int segmentSize = Math.max(maxSize / SEGMENTS, 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, InternetAddress[]> eldest) {
+                    return size() > segmentSize;
+                }
+            });
+        }
+    }
+
+    /**
+     * Get a single parsed and validated address.
+     *
+     * @param address Email address
+     * @return Parsed address
+     * @throws AddressException In case the address is not valid or there is not
+     *                          exactly one address
+     */
+    public InternetAddress getAddress(String address) throws AddressException {
+        InternetAddress[] parsed = getAddresses(address);
+        if (parsed.length != 1) {
+            throw new AddressException("Exactly one address expected", address);
+        }
+        return parsed[0];
+    }
+
+    /**
+     * Get a list of parsed and validated addresses. The returned array is shared
+     * by all the callers, so it must not be modified.
+     *
+     * @param addressList Email addresses separated by commas
+     * @return Parsed addresses
+     * @throws AddressException In case any of the addresses is not valid
+     */
+    public InternetAddress[] getAddresses(String addressList) throws AddressException {
+        Map<String, InternetAddress[]> segment = segmentOf(addressList);
+        synchronized (segment) {
+            InternetAddress[] cached = segment.get(addressList);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        InternetAddress[] parsed = InternetAddress.parse(addressList, true);
+        for (InternetAddress address : parsed) {
+            address.validate();
+        }
+        synchronized (segment) {
+            segment.put(addressList, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Get the number of cached entries.
+     *
+     * @return Cached entries
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, InternetAddress[]> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Map<String, InternetAddress[]> segmentOf(String addressList) {
+        int hash = addressList.hashCode();
+        return segments.get((hash ^ hash >>> 16) & (SEGMENTS - 1));
+    }
+}
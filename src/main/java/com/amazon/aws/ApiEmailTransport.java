@@ -0,0 +1,91 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+
+import jakarta.mail.MessagingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sesv2.SesV2AsyncClient;
+import software.amazon.awssdk.services.sesv2.model.SendEmailResponse;
+
+/**
+ * Sends the emails with Amazon Simple Email Service API V2, without blocking
+ * (see {@link EmailUtils#sendEmailWithApiAsync}).
+ */
+public class ApiEmailTransport implements EmailTransport {
+    private static final Logger logger = LoggerFactory.getLogger(ApiEmailTransport.class);
+
+    private final SesV2AsyncClient client;
+    private final SendEmailInfo sendEmailInfo;
+
+    /**
+     * Create a new transport.
+     *
+     * @param client        Client used to send the emails
+     * @param sendEmailInfo Information got from command line
+     */
+    public ApiEmailTransport(SesV2AsyncClient client, SendEmailInfo sendEmailInfo) {
+        this.client = client;
+        this.sendEmailInfo = sendEmailInfo;
+    }
+
+    @Override
+    public Mono<?> send(String to, PhaseRecorder phases, long seq) {
+        try {
+            return Mono.fromFuture(EmailUtils.sendEmailWithApiAsync(client, sendEmailInfo.getFrom(), to,
+                    sendEmailInfo.getSubject(), sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases,
+                    seq));
+        } catch (MessagingException | IOException e) {
+            return Mono.error(e);
+        }
+    }
+
+    @Override
+    public Object render(String to, PhaseRecorder phases, long seq) throws MessagingException, IOException {
+        return EmailUtils.createRawMessage(sendEmailInfo.getFrom(), to, sendEmailInfo.getSubject(),
+                sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases, seq);
+    }
+
+    @Override
+    public Mono<?> send(String to, Object rendered, PhaseRecorder phases, long seq) {
+        if (rendered instanceof byte[]) {
+            return Mono.fromFuture(EmailUtils.sendRawEmailWithApiAsync(client, (byte[]) rendered, phases, seq));
+        }
+        return send(to, phases, seq);
+    }
+
+    @Override
+    public String getMessageId(Object response) {
+        return response instanceof SendEmailResponse ? ((SendEmailResponse) response).messageId() : null;
+    }
+
+    @Override
+    public void close() {
+        logger.debug("Closing connection");
+        client.close();
+    }
+
+    /**
+     * Provider of {@link ApiEmailTransport}.
+     */
+    public static class Provider implements EmailTransportProvider {
+        @Override
+        public String getName() {
+            return ProtocolEnum.API.name();
+        }
+
+        @Override
+        public EmailTransport create(SendEmailInfo sendEmailInfo) {
+            try {
+                return new ApiEmailTransport(EmailUtils.createV2AsyncClient(), sendEmailInfo);
+            } catch (SdkClientException e) {
+                logger.error(String.format("Error trying to stablish connection: %s", e.getMessage()));
+                return null;
+            }
+        }
+    }
+}
@@ -1,12 +1,19 @@
 package com.amazon.aws;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
-
-import jakarta.mail.MessagingException;
-import jakarta.mail.NoSuchProviderException;
-import jakarta.mail.Session;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -20,9 +27,8 @@ import org.slf4j.LoggerFactory;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
-import software.amazon.awssdk.core.exception.SdkClientException;
-import software.amazon.awssdk.services.sesv2.SesV2AsyncClient;
 
 /**
  * Application class
@@ -30,13 +36,46 @@ import software.amazon.awssdk.services.sesv2.SesV2AsyncClient;
 public class App {
         private static final Logger logger = LoggerFactory.getLogger(App.class);
 
+        /**
+         * Name of the measured process (steady state)
+         */
+        private static final String PROCESS_SEND_EMAIL = "SendEmail";
+
+        /**
+         * Name of the warmup process, excluded from the measured results
+         */
+        private static final String PROCESS_WARMUP = "Warmup";
+
+        /**
+         * Name of the subcommand to compare two run reports
+         */
+        private static final String COMMAND_COMPARE = "compare";
+
+        /**
+         * Name of the subcommand to correlate notifications with the emails sent
+         */
+        private static final String COMMAND_CORRELATE = "correlate";
+
         /**
          * send-ses-email Command main method.
          * 
          * @param args Command line arguments @see {@link #getEmailInfo(String[])} for
-         *             more details.
+         *             more details. When first argument is <code>compare</code>, two
+         *             run reports are compared @see
+         *             {@link ReportComparator#run(String[])}. When it is
+         *             <code>correlate</code>, notifications are correlated with
+         *             the emails sent @see
+         *             {@link NotificationCorrelator#run(String[])}.
          */
         public static void main(String[] args) {
+                if (args.length > 0 && COMMAND_COMPARE.equals(args[0])) {
+                        System.exit(ReportComparator.run(Arrays.copyOfRange(args, 1, args.length)));
+                        return;
+                }
+                if (args.length > 0 && COMMAND_CORRELATE.equals(args[0])) {
+                        System.exit(NotificationCorrelator.run(Arrays.copyOfRange(args, 1, args.length)));
+                        return;
+                }
                 MeasureDuration md = new MeasureDuration();
                 SendEmailInfo emailInfo = getEmailInfo(args);
                 if (emailInfo == null) {
@@ -44,54 +83,195 @@ public class App {
                         return;
                 }
                 logger.info("Command Started");
-                String processSendEmail = "SendEmail";
-                // Start time counter
-                md.start(processSendEmail);
-                logger.info("Sending {} emails...", emailInfo.getRepetitions());
 
-                // Send email
-                switch (emailInfo.getProtocol()) {
-                        case SMTP:
-                                sendEmailWithSmtp(emailInfo);
-                                break;
-                        case API:
-                                sendEmailWithApi(emailInfo);
-                                break;
-                        default:
-                                logger.error("Invalid protocol");
-                                break;
+                // Load recipients filter
+                RecipientFilter recipientFilter;
+                try {
+                        recipientFilter = createRecipientFilter(emailInfo);
+                } catch (IOException | UncheckedIOException | InvalidPathException e) {
+                        logger.error("Error reading recipients", e);
+                        System.exit(1);
+                        return;
+                }
+                if (emailInfo.getTo() == null || emailInfo.getTo().isEmpty()) {
+                        if (emailInfo.getRecipientsFile() == null) {
+                                logger.error("There is no to address left to send emails");
+                                System.exit(1);
+                                return;
+                        }
+                        if (emailInfo.getWarmup() > 0) {
+                                logger.info("Warmup needs a to address, it is skipped");
+                                emailInfo.setWarmup(0);
+                        }
                 }
 
-                // Stop time counter
-                md.finish(processSendEmail);
-
-                // Calculate deration and speed
-                Duration totalDuration = md.getDuration(processSendEmail);
-                String totalDurationStr = md.getDurationString(processSendEmail);
-                Duration avgDuration = totalDuration.dividedBy(emailInfo.getRepetitions());
-                String strAvgDuration = DurationFormatter.getDurationString(avgDuration);
-                String durationSecondsStr = String.format("%d.%03d", totalDuration.toSeconds(),
-                                totalDuration.toMillisPart());
-                float durationSeconds = 0;
+                // Send email
+                GracefulShutdown shutdown = new GracefulShutdown(Duration.ofSeconds(emailInfo.getDrainTimeout()));
+                shutdown.install();
+                AdaptiveLimiter limiter = null;
+                if (emailInfo.isAdaptive()) {
+                        limiter = new AdaptiveLimiter(emailInfo.getConcurrency(), emailInfo.getMaxConcurrency());
+                }
+                Scheduler renderScheduler = null;
+                if (emailInfo.getRenderThreads() > 0) {
+                        renderScheduler = Schedulers.newParallel("render", emailInfo.getRenderThreads());
+                }
+                int batchSize = 1;
+                if (emailInfo.getSmtpBatchSize() > 1) {
+                        if (ProtocolEnum.SMTP.name().equals(emailInfo.getProtocol())) {
+                                batchSize = emailInfo.getSmtpBatchSize();
+                        } else {
+                                logger.info("SMTP batch size is ignored with protocol {}", emailInfo.getProtocol());
+                        }
+                }
+                EventLog eventLog = null;
+                if (emailInfo.getEventLog() != null) {
+                        try {
+                                eventLog = EventLog.open(Paths.get(emailInfo.getEventLog()), EventLog.DEFAULT_CAPACITY);
+                        } catch (IOException | InvalidPathException e) {
+                                logger.error("Error opening event log", e);
+                                shutdown.finished();
+                                System.exit(1);
+                                return;
+                        }
+                }
+                SendPipeline pipeline = SendPipeline.builder(emailInfo.getConcurrency(), shutdown).limiter(limiter)
+                                .render(renderScheduler, emailInfo.getRenderBuffer()).batchSize(batchSize)
+                                .eventLog(eventLog).build();
+                ScheduledSends scheduledSends;
                 try {
-                        durationSeconds = Float.parseFloat(durationSecondsStr);
-                } catch (NullPointerException | NumberFormatException e) {
-                        logger.error("Error converting duration in seconds to float", e);
+                        // Without scheduling options the journal is only opened if a recipient has its send-at
+                        scheduledSends = emailInfo.isResumeScheduled()
+                                        ? ScheduledSends.open(Paths.get(emailInfo.getScheduleJournal()),
+                                                        ScheduledSends.contentHash(emailInfo), true, shutdown)
+                                        : ScheduledSends.onDemand(Paths.get(emailInfo.getScheduleJournal()),
+                                                        emailInfo, shutdown);
+                } catch (IllegalStateException e) {
+                        logger.error("{}. Use --schedule-journal with another file, or delete it.", e.getMessage());
+                        shutdown.finished();
+                        System.exit(1);
+                        return;
+                } catch (IOException | UncheckedIOException | InvalidPathException e) {
+                        logger.error("Error reading scheduled emails", e);
+                        shutdown.finished();
+                        System.exit(1);
+                        return;
+                }
+                if (scheduledSends.getResumed() > 0) {
+                        logger.warn("Resuming {} scheduled emails from {}, the recipients of this command are not read",
+                                        scheduledSends.getResumed(), emailInfo.getScheduleJournal());
+                }
+                SendStatistics warmupStats = new SendStatistics(emailInfo.getWarmup());
+                SendStatistics stats = new SendStatistics(getEmails(emailInfo, scheduledSends));
+                boolean emailSentOk = sendEmail(md, emailInfo, pipeline, recipientFilter, scheduledSends, warmupStats,
+                                stats);
+                scheduledSends.close();
+                if (renderScheduler != null) {
+                        renderScheduler.dispose();
+                }
+                if (eventLog != null) {
+                        eventLog.close();
+                }
+                if (emailSentOk == false) {
+                        shutdown.finished();
                         System.exit(1);
                         return;
                 }
-                float speedEmailsPerSecond = emailInfo.getRepetitions() / durationSeconds;
-                String AvgSpeed = String.format("%.3f", speedEmailsPerSecond);
 
                 // Show summary
-                logger.info("Process: {} finished.", processSendEmail);
-                logger.info("Protocol used: {}.", emailInfo.getProtocol().toString());
-                logger.info("Emails sent: {}.", emailInfo.getRepetitions());
-                logger.info("Total duration: {} (H:MM:SS.MS)", totalDurationStr);
-                logger.info("Average duration: {} (H:MM:SS.MS)", strAvgDuration);
-                logger.info("Average speed: {} (emails/second)", AvgSpeed);
+                Duration warmupDuration = null;
+                if (emailInfo.getWarmup() > 0) {
+                        warmupDuration = md.getDuration(PROCESS_WARMUP);
+                        showSummary(PROCESS_WARMUP, emailInfo.getProtocol(), warmupStats, warmupDuration);
+                }
+                Duration duration = md.getDuration(PROCESS_SEND_EMAIL);
+                showSummary(PROCESS_SEND_EMAIL, emailInfo.getProtocol(), stats, duration);
                 md.clear();
+
+                // Write report
+                if (emailInfo.getReportFile() != null) {
+                        RunReport report = RunReport.create(emailInfo, duration, stats, warmupDuration);
+                        try {
+                                report.write(Paths.get(emailInfo.getReportFile()));
+                                logger.info("Report written: {}", emailInfo.getReportFile());
+                        } catch (IOException | InvalidPathException e) {
+                                logger.error("Error writing report", e);
+                        }
+                }
                 logger.info("Command Finished");
+                shutdown.finished();
+        }
+
+        /**
+         * Show the statistics of a measured process.
+         * 
+         * @param processName   Name of the measured process
+         * @param protocol      Protocol used to send the emails
+         * @param stats         Statistics of the process
+         * @param totalDuration Duration of the process
+         */
+        private static void showSummary(String processName, String protocol, SendStatistics stats,
+                        Duration totalDuration) {
+                // Calculate deration and speed
+                int emails = stats.getSent();
+                String totalDurationStr = DurationFormatter.getDurationString(totalDuration);
+                Duration avgDuration = emails > 0 ? totalDuration.dividedBy(emails) : Duration.ZERO;
+                String strAvgDuration = DurationFormatter.getDurationString(avgDuration);
+                double durationSeconds = totalDuration.toNanos() / 1_000_000_000.0;
+                double speedEmailsPerSecond = durationSeconds > 0 ? emails / durationSeconds : 0;
+                String avgSpeed = String.format("%.3f", speedEmailsPerSecond);
+
+                logger.info("Process: {} finished.", processName);
+                logger.info("Protocol used: {}.", protocol);
+                logger.info("Emails sent: {}.", emails);
+                if (stats.getFailed() > 0) {
+                        logger.info("Emails failed: {}.", stats.getFailed());
+                        logger.info("Errors: {}.", stats.getErrors());
+                }
+                if (stats.getAbandoned() > 0 || stats.getNotStarted() > 0) {
+                        logger.info("Emails abandoned: {} (in flight), {} (not started).", stats.getAbandoned(),
+                                        stats.getNotStarted());
+                }
+                if (stats.getConcurrencyLimit() > 0) {
+                        logger.info("Concurrency limit: {} (final), {} (peak).", stats.getConcurrencyLimit(),
+                                        stats.getPeakConcurrencyLimit());
+                }
+                if (stats.getSuppressed() > 0 || stats.getDuplicated() > 0 || stats.getInvalid() > 0) {
+                        logger.info("Recipients skipped: {} (suppressed), {} (duplicated), {} (invalid).",
+                                        stats.getSuppressed(), stats.getDuplicated(), stats.getInvalid());
+                }
+                logger.info("Total duration: {} (H:MM:SS.MS)", totalDurationStr);
+                logger.info("Average duration: {} (H:MM:SS.MS)", strAvgDuration);
+                logger.info("Average speed: {} (emails/second)", avgSpeed);
+                ResourceUsage usage = stats.getResourceUsage();
+                if (usage != null) {
+                        if (stats.getAllocatedBytesPerEmail() >= 0) {
+                                logger.info("Allocated per email: {} (bytes), total: {} (MB)",
+                                                stats.getAllocatedBytesPerEmail(),
+                                                String.format("%.3f", usage.getAllocatedBytes() / 1_048_576.0));
+                        }
+                        logger.info("Garbage collections: {}, time: {} (milliseconds), peak heap: {} (MB)",
+                                        usage.getGcCount(), usage.getGcMillis(),
+                                        String.format("%.3f", usage.getPeakHeapBytes() / 1_048_576.0));
+                }
+                logger.info("Latency p50: {} p90: {} p99: {} (H:MM:SS.MS)",
+                                DurationFormatter.getDurationString(stats.getLatencyPercentile(50)),
+                                DurationFormatter.getDurationString(stats.getLatencyPercentile(90)),
+                                DurationFormatter.getDurationString(stats.getLatencyPercentile(99)));
+                stats.getProtocolStatistics().forEach((protocolUsed, protocolStats) -> logger.info(
+                                "Protocol {}: sent {} failed {} speed {} (emails/second) latency p50: {} p99: {} (H:MM:SS.MS)",
+                                protocolUsed, protocolStats.getSent(), protocolStats.getFailed(),
+                                String.format("%.3f", durationSeconds > 0 ? protocolStats.getSent() / durationSeconds : 0),
+                                DurationFormatter.getDurationString(protocolStats.getLatencyPercentile(50)),
+                                DurationFormatter.getDurationString(protocolStats.getLatencyPercentile(99))));
+                stats.getLaneStatistics().forEach((lane, laneStats) -> logger.info(
+                                "Lane {}: dispatched {} wait p50: {} p99: {} (H:MM:SS.MS)", lane, laneStats.getSent(),
+                                DurationFormatter.getDurationString(laneStats.getLatencyPercentile(50)),
+                                DurationFormatter.getDurationString(laneStats.getLatencyPercentile(99))));
+                stats.getPhases().getDurations().forEach((phase, durations) -> logger.info(
+                                "Phase {}: avg {} p99 {} (milliseconds)", phase,
+                                String.format("%.3f", SendStatistics.getAverage(durations) / 1_000_000.0),
+                                String.format("%.3f", SendStatistics.getPercentile(durations, 99) / 1_000_000.0)));
         }
 
         /**
@@ -111,17 +291,75 @@ public class App {
 
                 Option protocolOption = Option.builder("p").longOpt("protocol").argName("protocol").hasArg()
                                 .required(false)
-                                .desc("Protocol to send email (SMTP | API). Default to API.").build();
+                                .desc("Protocol to send email (SMTP | API | MIXED | LOOPBACK | FILE, or any other transport plugged in). Default to API.")
+                                .build();
                 options.addOption(protocolOption);
 
+                Option splitRatioOption = Option.builder().longOpt("split-ratio").argName("ratio").hasArg()
+                                .required(false)
+                                .desc("Ratio of emails sent with API when protocol is MIXED (0 to 1), the rest are sent with SMTP, or dynamic to send more emails with the faster protocol. Default to 0.5.")
+                                .build();
+                options.addOption(splitRatioOption);
+
+                Option sinkDirectoryOption = Option.builder().longOpt("sink-dir").argName("directory").hasArg()
+                                .required(false)
+                                .desc("Directory where the emails are written when protocol is FILE, each run into its own subdirectory. Default to sent-emails.")
+                                .build();
+                options.addOption(sinkDirectoryOption);
+
+                Option sendAtOption = Option.builder().longOpt("send-at").argName("time").hasArg().required(false)
+                                .desc("Time to send the emails: date and time (e.g. 2026-10-19T10:00:00Z, or local time without offset) or duration from now (e.g. PT10M). Recipients can have their own send-at.")
+                                .build();
+                options.addOption(sendAtOption);
+
+                Option scheduleJournalOption = Option.builder().longOpt("schedule-journal").argName("file").hasArg()
+                                .required(false)
+                                .desc("Journal of the scheduled emails. When it is given (or --send-at is) and it exists, its pending emails are resumed instead of reading the recipients, provided from, subject, body and attachments have not changed. Default to scheduled-sends.journal.")
+                                .build();
+                options.addOption(scheduleJournalOption);
+
+                Option lanesOption = Option.builder().longOpt("lanes").argName("lanes").hasArg().required(false)
+                                .desc("Priority lanes of the recipients with their weights, e.g. transactional:9,bulk:1. Recipients choose their lane with the lane attribute, the first lane is the default one.")
+                                .build();
+                options.addOption(lanesOption);
+
+                Option laneCapacityOption = Option.builder().longOpt("lane-capacity").argName("emails").hasArg()
+                                .required(false)
+                                .desc("Maximum number of emails waiting in each priority lane. Default to 1000.")
+                                .build();
+                options.addOption(laneCapacityOption);
+
+                Option messageIndexOption = Option.builder().longOpt("message-index").argName("file").hasArg()
+                                .required(false)
+                                .desc("Index where the message id, recipient and time of each email sent are recorded, to correlate notifications with the correlate subcommand.")
+                                .build();
+                options.addOption(messageIndexOption);
+
                 Option fromOption = Option.builder("f").longOpt("from").argName("from").hasArg().required(true)
                                 .desc("From email address").build();
                 options.addOption(fromOption);
 
-                Option toOption = Option.builder("t").longOpt("to").argName("to").hasArg().required(true)
-                                .desc("To email address").build();
+                Option toOption = Option.builder("t").longOpt("to").argName("to").hasArg().required(false)
+                                .desc("To email address. Required unless a recipients file is given.").build();
                 options.addOption(toOption);
 
+                Option recipientsOption = Option.builder("l").longOpt("recipients").argName("file").hasArg()
+                                .required(false)
+                                .desc("File with one recipient per line, each one receives one email (repetitions are ignored). Duplicated recipients are skipped.")
+                                .build();
+                options.addOption(recipientsOption);
+
+                Option suppressionListOption = Option.builder("x").longOpt("suppression-list").argName("file")
+                                .hasArg().required(false)
+                                .desc("File with one address per line that must not receive any email").build();
+                options.addOption(suppressionListOption);
+
+                Option suppressionBloomOption = Option.builder().longOpt("suppression-bloom-fpp").argName("rate")
+                                .hasArg().required(false)
+                                .desc("Hold the suppression list in a Bloom filter with the given false positive rate (e.g. 0.001) to save memory. Default to 0 (exact).")
+                                .build();
+                options.addOption(suppressionBloomOption);
+
                 Option subjectOption = Option.builder("s").longOpt("subject").argName("subject").hasArg()
                                 .required(false)
                                 .desc("Email subject").build();
@@ -141,6 +379,68 @@ public class App {
                                 .desc("Number of repetitions (emails to be sent)").build();
                 options.addOption(repetitionsOption);
 
+                Option warmupOption = Option.builder("w").longOpt("warmup").argName("warmup").hasArg()
+                                .required(false)
+                                .desc("Number of warmup emails sent before measuring. Default to 0.").build();
+                options.addOption(warmupOption);
+
+                Option reportOption = Option.builder("o").longOpt("report").argName("report").hasArg()
+                                .required(false)
+                                .desc("File to write the run report (JSON, or CSV when file ends with .csv)")
+                                .build();
+                options.addOption(reportOption);
+
+                Option concurrencyOption = Option.builder("c").longOpt("concurrency").argName("concurrency")
+                                .hasArg().required(false)
+                                .desc("Maximum number of emails sent at the same time. Default to 1.").build();
+                options.addOption(concurrencyOption);
+
+                Option adaptiveOption = Option.builder().longOpt("adaptive").required(false)
+                                .desc("Adapt the number of emails sent at the same time to the observed latency and throttling, starting from the concurrency.")
+                                .build();
+                options.addOption(adaptiveOption);
+
+                Option maxConcurrencyOption = Option.builder("m").longOpt("max-concurrency")
+                                .argName("concurrency").hasArg().required(false)
+                                .desc("Maximum number of emails sent at the same time when the concurrency is adaptive. Default to 64.")
+                                .build();
+                options.addOption(maxConcurrencyOption);
+
+                Option renderThreadsOption = Option.builder().longOpt("render-threads").argName("threads").hasArg()
+                                .required(false)
+                                .desc("Build and serialize the emails in a stage apart from sending them, with the given number of threads (0 for the number of CPUs), not with protocol MIXED. Default to build each email while it is sent.")
+                                .build();
+                options.addOption(renderThreadsOption);
+
+                Option renderBufferOption = Option.builder().longOpt("render-buffer").argName("emails").hasArg()
+                                .required(false)
+                                .desc("Maximum number of emails rendered ahead of the send stage. Default to the maximum number of emails sent at the same time.")
+                                .build();
+                options.addOption(renderBufferOption);
+
+                Option virtualThreadsOption = Option.builder().longOpt("virtual-threads").required(false)
+                                .desc("Send each SMTP email in a virtual thread of its own instead of a platform thread, up to the maximum number of emails sent at the same time. It needs Java 24 or later, older versions use platform threads.")
+                                .build();
+                options.addOption(virtualThreadsOption);
+
+                Option smtpBatchSizeOption = Option.builder().longOpt("smtp-batch-size").argName("recipients")
+                                .hasArg().required(false)
+                                .desc("Maximum number of recipients of each SMTP transaction, the content is sent once for all of them and they do not see each other. Not supported with protocol MIXED. Default to 1 (one transaction for each email).")
+                                .build();
+                options.addOption(smtpBatchSizeOption);
+
+                Option eventLogOption = Option.builder().longOpt("event-log").argName("file").hasArg()
+                                .required(false)
+                                .desc("File where the outcome of each email is written (JSON lines) by a background thread, instead of logging each error.")
+                                .build();
+                options.addOption(eventLogOption);
+
+                Option drainTimeoutOption = Option.builder("d").longOpt("drain-timeout").argName("seconds")
+                                .hasArg().required(false)
+                                .desc("Seconds to wait for the emails in flight once sending has stopped (or on shutdown). Default to 30.")
+                                .build();
+                options.addOption(drainTimeoutOption);
+
                 CommandLineParser parser = new DefaultParser();
                 HelpFormatter formatter = new HelpFormatter();
 
@@ -154,12 +454,15 @@ public class App {
                 }
 
                 String strProtocol = commandLine.getOptionValue("protocol");
-                ProtocolEnum protocol = ProtocolEnum.API;
+                String protocol = ProtocolEnum.API.name();
                 if (strProtocol != null) {
-                        try {
-                                protocol = ProtocolEnum.valueOf(strProtocol.toUpperCase());
-                        } catch (IllegalArgumentException e) {
-                                System.out.println("Invalid protocol, it must be either SMTP or API.");
+                        List<String> protocols = new ArrayList<>(EmailTransportProvider.getNames());
+                        protocols.add(ProtocolEnum.MIXED.name());
+                        if (protocols.contains(strProtocol.toUpperCase())) {
+                                protocol = strProtocol.toUpperCase();
+                        } else {
+                                System.out.println("Invalid protocol, it must be one of " + String.join(", ", protocols)
+                                                + ".");
                                 System.out.println("Using defalt value: API");
                         }
                 }
@@ -169,8 +472,44 @@ public class App {
                 String body = Optional.ofNullable(commandLine.getOptionValue("body"))
                                 .orElse("This is just a testing email. Do you received it?");
                 String attachment = commandLine.getOptionValue("attachments");
+
+                // Reject malformed addresses before sending any email
+                List<String> rejected = new ArrayList<>();
+                from = EmailUtils.validateAddresses(from, rejected);
+                if (rejected.isEmpty() == false || from.isEmpty()) {
+                        System.out.println("Invalid from address: " + String.join(", ", rejected));
+                        return sendEmailInfo;
+                }
+                String recipientsFile = commandLine.getOptionValue("recipients");
+                if (to == null && recipientsFile == null) {
+                        System.out.println("Either a to address or a recipients file is required.");
+                        formatter.printHelp("send-email", options);
+                        return sendEmailInfo;
+                }
+                if (to != null) {
+                        to = EmailUtils.validateAddresses(to, rejected);
+                        if (rejected.isEmpty() == false) {
+                                System.out.println("Invalid to address(es), they will not receive any email: "
+                                                + String.join(", ", rejected));
+                        }
+                        if (to.isEmpty() && recipientsFile == null) {
+                                System.out.println("There is no valid to address.");
+                                return sendEmailInfo;
+                        }
+                }
                 sendEmailInfo = new SendEmailInfo(protocol, from, to, subject, body);
                 sendEmailInfo.setAttachments(attachment);
+                sendEmailInfo.setRecipientsFile(recipientsFile);
+                sendEmailInfo.setSuppressionList(commandLine.getOptionValue("suppression-list"));
+                String strBloomFpp = commandLine.getOptionValue("suppression-bloom-fpp", "0");
+                try {
+                        double bloomFpp = Double.parseDouble(strBloomFpp);
+                        sendEmailInfo.setSuppressionBloomFpp(bloomFpp > 0 && bloomFpp < 1 ? bloomFpp : 0);
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid suppression Bloom filter false positive rate.");
+                        System.out.println("Using defalt value: 0");
+                        sendEmailInfo.setSuppressionBloomFpp(0);
+                }
                 String strRepetitions = commandLine.getOptionValue("repetitions", "1");
                 try {
                         int repetitions = Integer.parseInt(strRepetitions);
@@ -180,83 +519,463 @@ public class App {
                         System.out.println("Using defalt value: 1");
                         sendEmailInfo.setRepetitions(1);
                 }
+                String strWarmup = commandLine.getOptionValue("warmup", "0");
+                try {
+                        int warmup = Integer.parseInt(strWarmup);
+                        sendEmailInfo.setWarmup(Math.max(warmup, 0));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid warmup number.");
+                        System.out.println("Using defalt value: 0");
+                        sendEmailInfo.setWarmup(0);
+                }
+                sendEmailInfo.setReportFile(commandLine.getOptionValue("report"));
+                String strConcurrency = commandLine.getOptionValue("concurrency", "1");
+                try {
+                        int concurrency = Integer.parseInt(strConcurrency);
+                        sendEmailInfo.setConcurrency(Math.max(concurrency, 1));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid concurrency number.");
+                        System.out.println("Using defalt value: 1");
+                        sendEmailInfo.setConcurrency(1);
+                }
+                String strSplitRatio = commandLine.getOptionValue("split-ratio", "0.5");
+                if ("dynamic".equalsIgnoreCase(strSplitRatio)) {
+                        sendEmailInfo.setSplitRatio(ProtocolRouter.DYNAMIC);
+                } else {
+                        try {
+                                double splitRatio = Double.parseDouble(strSplitRatio);
+                                sendEmailInfo.setSplitRatio(Math.min(Math.max(splitRatio, 0), 1));
+                        } catch (NumberFormatException e) {
+                                System.out.println("Invalid split ratio.");
+                                System.out.println("Using defalt value: 0.5");
+                                sendEmailInfo.setSplitRatio(0.5);
+                        }
+                }
+                sendEmailInfo.setSinkDirectory(commandLine.getOptionValue("sink-dir", "sent-emails"));
+                String strSendAt = commandLine.getOptionValue("send-at");
+                if (strSendAt != null) {
+                        try {
+                                sendEmailInfo.setSendAt(Recipient.parseTime(strSendAt, System.currentTimeMillis()));
+                        } catch (DateTimeParseException e) {
+                                System.out.println("Invalid send at time: " + strSendAt);
+                                return null;
+                        }
+                }
+                sendEmailInfo.setScheduleJournal(
+                                commandLine.getOptionValue("schedule-journal", "scheduled-sends.journal"));
+                sendEmailInfo.setResumeScheduled(
+                                commandLine.hasOption("schedule-journal") || commandLine.hasOption("send-at"));
+                String lanes = commandLine.getOptionValue("lanes");
+                if (lanes != null) {
+                        try {
+                                LaneDispatcher.parseLanes(lanes);
+                        } catch (IllegalArgumentException e) {
+                                System.out.println(e.getMessage());
+                                return null;
+                        }
+                        sendEmailInfo.setLanes(lanes);
+                }
+                sendEmailInfo.setMessageIndex(commandLine.getOptionValue("message-index"));
+                String strLaneCapacity = commandLine.getOptionValue("lane-capacity", "1000");
+                try {
+                        int laneCapacity = Integer.parseInt(strLaneCapacity);
+                        sendEmailInfo.setLaneCapacity(Math.max(laneCapacity, 1));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid lane capacity.");
+                        System.out.println("Using defalt value: 1000");
+                        sendEmailInfo.setLaneCapacity(1000);
+                }
+                sendEmailInfo.setAdaptive(commandLine.hasOption("adaptive"));
+                String strMaxConcurrency = commandLine.getOptionValue("max-concurrency", "64");
+                try {
+                        int maxConcurrency = Integer.parseInt(strMaxConcurrency);
+                        sendEmailInfo.setMaxConcurrency(Math.max(maxConcurrency, sendEmailInfo.getConcurrency()));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid maximum concurrency number.");
+                        System.out.println("Using defalt value: 64");
+                        sendEmailInfo.setMaxConcurrency(Math.max(64, sendEmailInfo.getConcurrency()));
+                }
+                sendEmailInfo.setVirtualThreads(commandLine.hasOption("virtual-threads"));
+                sendEmailInfo.setEventLog(commandLine.getOptionValue("event-log"));
+                String strSmtpBatchSize = commandLine.getOptionValue("smtp-batch-size", "1");
+                try {
+                        int smtpBatchSize = Integer.parseInt(strSmtpBatchSize);
+                        sendEmailInfo.setSmtpBatchSize(Math.max(smtpBatchSize, 1));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid SMTP batch size.");
+                        System.out.println("Using defalt value: 1");
+                        sendEmailInfo.setSmtpBatchSize(1);
+                }
+                if (commandLine.hasOption("render-threads")) {
+                        int processors = Runtime.getRuntime().availableProcessors();
+                        try {
+                                int renderThreads = Integer.parseInt(commandLine.getOptionValue("render-threads"));
+                                sendEmailInfo.setRenderThreads(renderThreads > 0 ? renderThreads : processors);
+                        } catch (NumberFormatException e) {
+                                System.out.println("Invalid render threads number.");
+                                System.out.println("Using defalt value: " + processors);
+                                sendEmailInfo.setRenderThreads(processors);
+                        }
+                }
+                if (ProtocolEnum.MIXED.name().equals(protocol)
+                                && (commandLine.hasOption("render-threads") || commandLine.hasOption("smtp-batch-size"))) {
+                        // Rendered emails and batches belong to one protocol, the router chooses it for each email
+                        System.out.println("Render threads and SMTP batch size are not supported with protocol MIXED.");
+                        return null;
+                }
+                String strRenderBuffer = commandLine.getOptionValue("render-buffer", "0");
+                try {
+                        int renderBuffer = Integer.parseInt(strRenderBuffer);
+                        sendEmailInfo.setRenderBuffer(Math.max(renderBuffer, 0));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid render buffer size.");
+                        System.out.println("Using defalt value: 0");
+                        sendEmailInfo.setRenderBuffer(0);
+                }
+                String strDrainTimeout = commandLine.getOptionValue("drain-timeout", "30");
+                try {
+                        int drainTimeout = Integer.parseInt(strDrainTimeout);
+                        sendEmailInfo.setDrainTimeout(Math.max(drainTimeout, 1));
+                } catch (NumberFormatException e) {
+                        System.out.println("Invalid drain timeout.");
+                        System.out.println("Using defalt value: 30");
+                        sendEmailInfo.setDrainTimeout(30);
+                }
                 logger.debug("getEmailInfo Finished");
                 return sendEmailInfo;
         }
 
+        /**
+         * Create the filter of the recipients: suppressed addresses and, when a
+         * recipients file is given, duplicated recipients. Suppressed to
+         * addresses are removed from the given information.
+         * 
+         * When a recipients file is given the repetitions are set to its number of
+         * recipients.
+         * 
+         * @param sendEmailInfo Information got from command line
+         * @return New filter, null when neither a recipients file nor a suppression
+         *         list is given
+         * @throws IOException In case the files cannot be read
+         */
+        private static RecipientFilter createRecipientFilter(SendEmailInfo sendEmailInfo) throws IOException {
+                if (sendEmailInfo.getRecipientsFile() == null && sendEmailInfo.getSuppressionList() == null) {
+                        return null;
+                }
+                long recipients = 0;
+                if (sendEmailInfo.getRecipientsFile() != null) {
+                        recipients = RecipientFilter.countAddresses(Paths.get(sendEmailInfo.getRecipientsFile()));
+                        sendEmailInfo.setRepetitions((int) Math.min(recipients, Integer.MAX_VALUE));
+                }
+                Path suppressionList = null;
+                if (sendEmailInfo.getSuppressionList() != null) {
+                        suppressionList = Paths.get(sendEmailInfo.getSuppressionList());
+                }
+                RecipientFilter filter = RecipientFilter.create(suppressionList,
+                                sendEmailInfo.getSuppressionBloomFpp(), recipients);
+                if (suppressionList != null && sendEmailInfo.getTo() != null) {
+                        List<String> suppressed = new ArrayList<>();
+                        sendEmailInfo.setTo(EmailUtils.removeAddresses(sendEmailInfo.getTo(), filter::isSuppressed,
+                                        suppressed));
+                        if (suppressed.isEmpty() == false) {
+                                logger.info("Suppressed to address(es), they will not receive any email: {}",
+                                                String.join(", ", suppressed));
+                        }
+                }
+                return filter;
+        }
+
+        /**
+         * Get the number of measured emails: the emails resumed from the journal
+         * of scheduled emails, or the repetitions otherwise.
+         * 
+         * @param sendEmailInfo  Information got from command line
+         * @param scheduledSends Emails to be sent later
+         * @return Number of emails
+         */
+        private static int getEmails(SendEmailInfo sendEmailInfo, ScheduledSends scheduledSends) {
+                if (scheduledSends.getResumed() > 0) {
+                        return (int) Math.min(scheduledSends.getResumed(), Integer.MAX_VALUE);
+                }
+                return sendEmailInfo.getRepetitions();
+        }
+
+        /**
+         * Run the warmup emails (if any) and then the measured emails, measuring
+         * each one as a separated process.
+         * 
+         * Warmup emails are sent to the to address(es). Measured emails are sent
+         * either to the to address(es) or, when a recipients file is given, to each
+         * recipient accepted by the filter. Measured emails with a time to be sent
+         * later wait in the scheduled emails, and when the journal of scheduled
+         * emails has been resumed only its emails are sent. Scheduled emails are
+         * recorded into the journal as they finish.
+         * 
+         * @param md              Object to measure the duration of the processes
+         * @param sendEmailInfo   Information got from command line
+         * @param pipeline        Pipeline to send the emails
+         * @param recipientFilter Filter of the recipients, it can be null
+         * @param scheduledSends  Emails to be sent later
+         * @param warmupStats     Statistics of the warmup emails
+         * @param stats           Statistics of the measured emails
+         * @param scheduler       Scheduler where each email is started
+         * @param sender          Creates the sender of one email recording it into
+         *                        the given statistics
+         */
+        private static void sendWithWarmup(MeasureDuration md, SendEmailInfo sendEmailInfo, SendPipeline pipeline,
+                        RecipientFilter recipientFilter, ScheduledSends scheduledSends, SendStatistics warmupStats,
+                        SendStatistics stats, Scheduler scheduler,
+                        Function<SendStatistics, SendPipeline.Sender> sender) {
+                try {
+                        if (sendEmailInfo.getWarmup() > 0) {
+                                logger.info("Warming up with {} emails...", sendEmailInfo.getWarmup());
+                                md.start(PROCESS_WARMUP);
+                                ResourceUsage warmupUsage = ResourceUsage.start();
+                                pipeline.send(sendEmailInfo.getTo(), sendEmailInfo.getWarmup(), warmupStats, scheduler,
+                                                sender.apply(warmupStats));
+                                warmupStats.recordResourceUsage(warmupUsage.finish());
+                                md.finish(PROCESS_WARMUP);
+                        }
+                        int emails = getEmails(sendEmailInfo, scheduledSends);
+                        logger.info("Sending {} emails...", emails);
+                        md.start(PROCESS_SEND_EMAIL);
+                        ResourceUsage usage = ResourceUsage.start();
+                        long now = System.currentTimeMillis();
+                        long sendAt = sendEmailInfo.getSendAt();
+                        if (scheduledSends.getResumed() > 0 || sendEmailInfo.getRecipientsFile() != null) {
+                                LaneDispatcher lanes = null;
+                                if (sendEmailInfo.getLanes() != null) {
+                                        lanes = new LaneDispatcher(LaneDispatcher.parseLanes(sendEmailInfo.getLanes()),
+                                                        sendEmailInfo.getLaneCapacity());
+                                }
+                                List<Flux<Recipient>> sources = new ArrayList<>();
+                                if (scheduledSends.getResumed() == 0) {
+                                        Path recipientsFile = Paths.get(sendEmailInfo.getRecipientsFile());
+                                        Flux<Recipient> read = Flux.using(() -> RecipientFilter.lines(recipientsFile),
+                                                        Flux::fromStream, Stream::close)
+                                                        .map(line -> Recipient.parse(line, sendAt, now));
+                                        // With lanes, each one reads the file on its own
+                                        for (Flux<Recipient> source : lanes != null ? lanes.split(read)
+                                                        : Collections.singletonList(read)) {
+                                                sources.add(source.filter(recipient -> recipientFilter
+                                                                .isValid(recipient.getAddress())));
+                                        }
+                                }
+                                List<Flux<Recipient>> scheduled = scheduledSends.schedule(sources);
+                                Flux<Recipient> recipients = Flux.merge(scheduled);
+                                if (lanes != null) {
+                                        recipients = lanes.dispatch(scheduled.subList(0, sources.size()),
+                                                        scheduled.get(sources.size()), stats);
+                                }
+                                pipeline.send(recipients, emails, recipientFilter, scheduledSends::finished, stats,
+                                                scheduler, sender.apply(stats));
+                        } else if (sendAt > now) {
+                                String to = sendEmailInfo.getTo();
+                                Flux<Recipient> recipients = Flux.range(1, sendEmailInfo.getRepetitions())
+                                                .map(index -> new Recipient(to, sendAt, null));
+                                pipeline.send(scheduledSends.schedule(recipients), emails, null,
+                                                scheduledSends::finished, stats, scheduler, sender.apply(stats));
+                        } else {
+                                pipeline.send(sendEmailInfo.getTo(), sendEmailInfo.getRepetitions(), stats, scheduler,
+                                                sender.apply(stats));
+                        }
+                        stats.recordResourceUsage(usage.finish());
+                        md.finish(PROCESS_SEND_EMAIL);
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        logger.error("Interrupted while sending emails", e);
+                }
+                if (recipientFilter != null) {
+                        stats.recordSkipped(recipientFilter.getSuppressed(), recipientFilter.getDuplicated(),
+                                        recipientFilter.getInvalid());
+                }
+        }
+
         /**
          * Send the email n times according to the comand line parameters.
          * 
-         * @param sendEmailInfo Information got from command line and covnerted into a
-         *                      {@link com.amazon.aws.SendEmailInfo} object
+         * The transport is created before measuring, so the measured process only
+         * includes the emails sending.
+         * 
+         * @param md              Object to measure the duration of the processes
+         * @param sendEmailInfo   Information got from command line and covnerted
+         *                        into a {@link com.amazon.aws.SendEmailInfo} object
+         * @param pipeline        Pipeline to send the emails
+         * @param recipientFilter Filter of the recipients, it can be null
+         * @param scheduledSends  Emails to be sent later
+         * @param warmupStats     Statistics of the warmup emails
+         * @param stats           Statistics of the measured emails
          * @return true en case everything goes well, false in case an error ocurred
          */
-        private static boolean sendEmailWithApi(SendEmailInfo sendEmailInfo) {
+        private static boolean sendEmail(MeasureDuration md, SendEmailInfo sendEmailInfo, SendPipeline pipeline,
+                        RecipientFilter recipientFilter, ScheduledSends scheduledSends, SendStatistics warmupStats,
+                        SendStatistics stats) {
                 logger.debug("sendEmail Started");
                 boolean emailSentOk = false;
-                SesV2AsyncClient client;
-                try {
-                        client = EmailUtils.createV2AsyncClient();
-                } catch (SdkClientException e) {
-                        logger.error(String.format("Error trying to stablish connection: %s", e.getMessage()));
-                        return emailSentOk;
+                MessageIdIndex messageIndex = null;
+                if (sendEmailInfo.getMessageIndex() != null) {
+                        try {
+                                messageIndex = MessageIdIndex.open(Paths.get(sendEmailInfo.getMessageIndex()), false);
+                        } catch (IOException | InvalidPathException e) {
+                                logger.error("Error opening message index", e);
+                                return emailSentOk;
+                        }
+                }
+                MessageIdIndex index = messageIndex;
+                if (ProtocolEnum.MIXED.name().equals(sendEmailInfo.getProtocol())) {
+                        EmailTransport api = createTransport(ProtocolEnum.API.name(), sendEmailInfo);
+                        EmailTransport smtp = api != null ? createTransport(ProtocolEnum.SMTP.name(), sendEmailInfo)
+                                        : null;
+                        if (smtp == null) {
+                                if (api != null) {
+                                        api.close();
+                                }
+                                closeMessageIndex(index);
+                                return emailSentOk;
+                        }
+                        // Each transport starts its emails in its own scheduler
+                        sendWithWarmup(md, sendEmailInfo, pipeline, recipientFilter, scheduledSends, warmupStats,
+                                        stats, Schedulers.immediate(),
+                                        statistics -> new ProtocolRouter(
+                                                        indexedSender(scheduledSender(api, statistics), api, index),
+                                                        indexedSender(scheduledSender(smtp, statistics), smtp, index),
+                                                        sendEmailInfo.getSplitRatio(), statistics));
+                        api.close();
+                        smtp.close();
+                } else {
+                        EmailTransport transport = createTransport(sendEmailInfo.getProtocol(), sendEmailInfo);
+                        if (transport == null) {
+                                closeMessageIndex(index);
+                                return emailSentOk;
+                        }
+                        sendWithWarmup(md, sendEmailInfo, pipeline, recipientFilter, scheduledSends, warmupStats,
+                                        stats, transport.getScheduler(),
+                                        statistics -> indexedSender(transportSender(transport, statistics), transport,
+                                                        index));
+                        transport.close();
+                }
+                if (index != null) {
+                        logger.info("Message index: {} emails recorded in {}", index.size(),
+                                        sendEmailInfo.getMessageIndex());
+                        closeMessageIndex(index);
                 }
-                Flux.range(1, sendEmailInfo.getRepetitions())
-                                .flatMap(index -> {
-                                        try {
-                                                return Mono.just(EmailUtils.sendEmailWithApi(client,
-                                                                sendEmailInfo.getFrom(),
-                                                                sendEmailInfo.getTo(), sendEmailInfo.getSubject(),
-                                                                sendEmailInfo.getBody(),
-                                                                sendEmailInfo.getAttachments()));
-                                        } catch (MessagingException | IOException e) {
-                                                logger.error("Error sending email", e);
-                                        }
-                                        return null;
-                                })
-                                .parallel()
-                                .runOn(Schedulers.parallel())
-                                .subscribe(response -> logger.debug(response.toString()));
-                logger.debug("Closing connection");
-                client.close();
                 emailSentOk = true;
                 logger.debug("sendEmail Finished");
                 return emailSentOk;
         }
 
-        private static boolean sendEmailWithSmtp(SendEmailInfo sendEmailInfo) {
-                logger.debug("sendEmail Started");
-                boolean emailSentOk = false;
-                Session session = EmailUtils.createSmtpSession();
-                if (session == null) {
-                        return emailSentOk;
+        private static EmailTransport createTransport(String protocol, SendEmailInfo sendEmailInfo) {
+                EmailTransportProvider provider = EmailTransportProvider.find(protocol);
+                if (provider == null) {
+                        logger.error("Invalid protocol: {}", protocol);
+                        return null;
+                }
+                return provider.create(sendEmailInfo);
+        }
+
+        /**
+         * Record the message id of each email sent into the index, if any.
+         * 
+         * @param sender    Sends one email
+         * @param transport Transport used by the sender, it gives the message id
+         * @param index     Index of the message ids, it can be null
+         * @return Sender recording the message ids
+         */
+        private static SendPipeline.Sender indexedSender(SendPipeline.Sender sender, EmailTransport transport,
+                        MessageIdIndex index) {
+                if (index == null) {
+                        return sender;
                 }
-                Flux.range(1, sendEmailInfo.getRepetitions())
-                                .flatMap(index -> {
+                return new SendPipeline.Sender() {
+                        @Override
+                        public Mono<?> send(String to, long seq) {
+                                return sender.send(to, seq).doOnNext(response -> record(to, response));
+                        }
+
+                        @Override
+                        public Object render(String to, long seq) throws Exception {
+                                return sender.render(to, seq);
+                        }
+
+                        @Override
+                        public Mono<?> send(String to, Object rendered, long seq) {
+                                return sender.send(to, rendered, seq).doOnNext(response -> record(to, response));
+                        }
+
+                        @Override
+                        public Object renderBatch(List<String> recipients, long seq) throws Exception {
+                                return sender.renderBatch(recipients, seq);
+                        }
+
+                        @Override
+                        public Mono<?> sendBatch(List<String> recipients, Object rendered, long seq) {
+                                // One message id for all the recipients of the batch it was sent to
+                                return sender.sendBatch(recipients, rendered, seq)
+                                                .doOnNext(response -> record(String.join(",", recipients), response))
+                                                .doOnError(PartialSendException.class, e -> record(
+                                                                String.join(",", e.getSent()), e.getResponse()));
+                        }
+
+                        private void record(String to, Object response) {
+                                String messageId = transport.getMessageId(response);
+                                if (messageId != null) {
                                         try {
-                                                return Mono.just(EmailUtils.sendEmailWithSmtp(session,
-                                                                sendEmailInfo.getFrom(),
-                                                                sendEmailInfo.getTo(), sendEmailInfo.getSubject(),
-                                                                sendEmailInfo.getBody(),
-                                                                sendEmailInfo.getAttachments()));
-                                        } catch (MessagingException e) {
-                                                logger.error("Error sending email", e);
+                                                index.record(messageId, to, System.currentTimeMillis());
+                                        } catch (IOException e) {
+                                                // The email has been sent, it is not a failure
+                                                logger.error("Error recording message id", e);
                                         }
-                                        return null;
-                                })
-                                .parallel()
-                                .runOn(Schedulers.parallel())
-                                .subscribe(response -> logger.debug(response.toString()));
-                try {
-                        logger.debug("Closing connection");
-                        session.getTransport().close();
-                } catch (NoSuchProviderException e) {
-                        logger.error("Error closing session", e);
-                } catch (MessagingException e) {
-                        logger.error("Error closing session", e);
+                                }
+                        }
+                };
+        }
+
+        /**
+         * Send the emails with the given transport, rendering them apart when the
+         * pipeline asks for it.
+         * 
+         * @param transport Transport used to send the emails
+         * @param stats     Statistics to record the phases of the emails into
+         * @return Sender using the transport
+         */
+        private static SendPipeline.Sender transportSender(EmailTransport transport, SendStatistics stats) {
+                PhaseRecorder phases = stats.getPhases();
+                return new SendPipeline.Sender() {
+                        @Override
+                        public Mono<?> send(String to, long seq) {
+                                return transport.send(to, phases, seq);
+                        }
+
+                        @Override
+                        public Object render(String to, long seq) throws Exception {
+                                return transport.render(to, phases, seq);
+                        }
+
+                        @Override
+                        public Mono<?> send(String to, Object rendered, long seq) {
+                                return transport.send(to, rendered, phases, seq);
+                        }
+
+                        @Override
+                        public Object renderBatch(List<String> recipients, long seq) throws Exception {
+                                return transport.renderBatch(recipients, phases, seq);
+                        }
+
+                        @Override
+                        public Mono<?> sendBatch(List<String> recipients, Object rendered, long seq) {
+                                return transport.sendBatch(recipients, rendered, phases, seq);
+                        }
+                };
+        }
+
+        private static void closeMessageIndex(MessageIdIndex index) {
+                if (index != null) {
+                        index.close();
                 }
-                emailSentOk = true;
-                logger.debug("sendEmail Finished");
-                return emailSentOk;
+        }
+
+        private static SendPipeline.Sender scheduledSender(EmailTransport transport, SendStatistics stats) {
+                PhaseRecorder phases = stats.getPhases();
+                return (to, seq) -> transport.send(to, phases, seq).subscribeOn(transport.getScheduler());
         }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.amazon.aws;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Transport used to send the emails, created by an
+ * {@link EmailTransportProvider} with the information got from command line
+ * (from, subject, body and attachments).
+ *
+ * Implementations must record the lifecycle phases of each email (see
+ * {@link PhaseRecorder}), at least {@link PhaseRecorder#RESPONDED}.
+ */
+public interface EmailTransport extends AutoCloseable {
+    /**
+     * Send one email.
+     *
+     * @param to     Recipient(s) of the email
+     * @param phases Recorder of the lifecycle phases of the email
+     * @param seq    Sequence number of the email in the recorder
+     * @return {@link Mono} that completes once the email has been sent
+     */
+    Mono<?> send(String to, PhaseRecorder phases, long seq);
+
+    /**
+     * Build and serialize one email without sending it, so CPU bound work can
+     * be done apart from the network (see {@link SendPipeline}). By default
+     * nothing is rendered and the email is built when it is sent.
+     *
+     * @param to     Recipient(s) of the email
+     * @param phases Recorder of the lifecycle phases of the email
+     * @param seq    Sequence number of the email in the recorder
+     * @return Rendered email to be given to
+     *         {@link #send(String, Object, PhaseRecorder, long)}, null if
+     *         this transport does not render emails apart
+     * @throws Exception In case the email cannot be built
+     */
+    default Object render(String to, PhaseRecorder phases, long seq) throws Exception {
+        return null;
+    }
+
+    /**
+     * Send one email already rendered by
+     * {@link #render(String, PhaseRecorder, long)}.
+     *
+     * @param to       Recipient(s) of the email
+     * @param rendered Rendered email, when it is null the email is built as
+     *                 {@link #send(String, PhaseRecorder, long)} does (by
+     *                 default)
+     * @param phases   Recorder of the lifecycle phases of the email
+     * @param seq      Sequence number of the email in the recorder
+     * @return {@link Mono} that completes once the email has been sent
+     */
+    default Mono<?> send(String to, Object rendered, PhaseRecorder phases, long seq) {
+        return send(to, phases, seq);
+    }
+
+    /**
+     * Send the same email to each one of the given recipients. By default each
+     * email is sent on its own, one after the other.
+     *
+     * @param recipients Recipients, each one receives an email
+     * @param phases     Recorder of the lifecycle phases of the emails
+     * @param seq        Sequence number of the emails in the recorder
+     * @return {@link Mono} that completes once all the emails have been sent
+     */
+    default Mono<?> sendBatch(List<String> recipients, PhaseRecorder phases, long seq) {
+        return Flux.fromIterable(recipients).concatMap(to -> send(to, phases, seq)).then();
+    }
+
+    /**
+     * Build and serialize one email to be sent to several recipients by
+     * {@link #sendBatch(List, Object, PhaseRecorder, long)}. By default nothing
+     * is rendered.
+     *
+     * @param recipients Recipients of the email
+     * @param phases     Recorder of the lifecycle phases of the email
+     * @param seq        Sequence number of the email in the recorder
+     * @return Rendered email, null if this transport does not render emails
+     *         apart
+     * @throws Exception In case the email cannot be built
+     */
+    default Object renderBatch(List<String> recipients, PhaseRecorder phases, long seq) throws Exception {
+        return null;
+    }
+
+    /**
+     * Send the same email, already rendered by
+     * {@link #renderBatch(List, PhaseRecorder, long)}, to each one of the given
+     * recipients.
+     *
+     * @param recipients Recipients, each one receives an email
+     * @param rendered   Rendered email, when it is null the email is built as
+     *                   {@link #sendBatch(List, PhaseRecorder, long)} does (by
+     *                   default)
+     * @param phases     Recorder of the lifecycle phases of the emails
+     * @param seq        Sequence number of the emails in the recorder
+     * @return {@link Mono} that completes once all the emails have been sent
+     */
+    default Mono<?> sendBatch(List<String> recipients, Object rendered, PhaseRecorder phases, long seq) {
+        return sendBatch(recipients, phases, seq);
+    }
+
+    /**
+     * Get the message id given by the endpoint to an email sent, so its
+     * notifications (e.g. bounces) can be correlated with its recipient (see
+     * {@link MessageIdIndex}).
+     *
+     * @param response Value emitted by {@link #send(String, PhaseRecorder, long)}
+     * @return Message id, null if there is none (by default)
+     */
+    default String getMessageId(Object response) {
+        return null;
+    }
+
+    /**
+     * Get the scheduler where the emails must be started. Transports that
+     * block while sending must use a scheduler with threads of their own.
+     *
+     * @return Scheduler, {@link Schedulers#immediate()} by default
+     */
+    default Scheduler getScheduler() {
+        return Schedulers.immediate();
+    }
+
+    /**
+     * Release the resources of the transport. Emails still in flight are not
+     * waited.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,58 @@
+package com.amazon.aws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Service provider of an {@link EmailTransport}. Providers are discovered with
+ * {@link ServiceLoader}, so new transports can be added by listing them in a
+ * <code>META-INF/services/com.amazon.aws.EmailTransportProvider</code> file of
+ * the class path. The transport is chosen by its name with the protocol
+ * command line option.
+ */
+public interface EmailTransportProvider {
+    /**
+     * Get the name of the transport, e.g. <code>API</code>.
+     *
+     * @return Name in upper case
+     */
+    String getName();
+
+    /**
+     * Create a new transport.
+     *
+     * @param sendEmailInfo Information got from command line
+     * @return New transport, null in case it cannot be created (the reason is
+     *         logged)
+     */
+    EmailTransport create(SendEmailInfo sendEmailInfo);
+
+    /**
+     * Find the provider of a transport.
+     *
+     * @param name Name of the transport, case insensitive
+     * @return Provider, null if there is no transport with the given name
+     */
+    static EmailTransportProvider find(String name) {
+        for (EmailTransportProvider provider : ServiceLoader.load(EmailTransportProvider.class)) {
+            if (provider.getName().equalsIgnoreCase(name)) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the names of all the transports available.
+     *
+     * @return Names of the transports
+     */
+    static List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        for (EmailTransportProvider provider : ServiceLoader.load(EmailTransportProvider.class)) {
+            names.add(provider.getName());
+        }
+        return names;
+    }
+}
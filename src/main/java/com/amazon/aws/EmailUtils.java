@@ -2,28 +2,46 @@ package com.amazon.aws;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 import jakarta.activation.DataHandler;
 import jakarta.activation.DataSource;
 import jakarta.activation.FileDataSource;
+import jakarta.mail.Address;
 import jakarta.mail.Authenticator;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Multipart;
 import jakarta.mail.PasswordAuthentication;
+import jakarta.mail.SendFailedException;
 import jakarta.mail.Session;
 import jakarta.mail.Transport;
 import jakarta.mail.internet.AddressException;
-import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.internet.MimeMultipart;
 
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.eclipse.angus.mail.smtp.SMTPTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.services.sesv2.SesV2AsyncClient;
 import software.amazon.awssdk.services.sesv2.model.EmailContent;
 import software.amazon.awssdk.services.sesv2.model.RawMessage;
@@ -49,6 +67,17 @@ public class EmailUtils {
     private static final String ENV_SMTP_USERNAME = "SMTP_USERNAME";
     private static final String ENV_SMTP_PWD = "SMTP_PASSWORD";
 
+    /**
+     * To header of the emails sent at once to several recipients, so recipients
+     * do not see each other
+     */
+    private static final String UNDISCLOSED_RECIPIENTS = "undisclosed-recipients:;";
+
+    /**
+     * Parsed addresses shared by all the emails
+     */
+    private static final AddressCache addressCache = new AddressCache(AddressCache.DEFAULT_MAX_SIZE);
+
     /**
      * Create a new {@link SesV2AsyncClient} object with convenient defaults.
      * 
@@ -70,6 +99,90 @@ public class EmailUtils {
         return client;
     };
 
+    /**
+     * Validate the given addresses before sending any email, so malformed
+     * addresses do not consume Simple Email Service quota. Valid addresses are
+     * kept in cache for the emails to be sent.
+     * 
+     * @param addressList Email addresses separated by commas
+     * @param rejected    List where the malformed addresses (and the reason) are
+     *                    added
+     * @return Valid addresses separated by commas, an empty String if none is
+     *         valid
+     */
+    public static String validateAddresses(String addressList, List<String> rejected) {
+        logger.debug("validateAddresses Started");
+        List<String> valid = new ArrayList<>();
+        for (String address : splitAddresses(addressList == null ? "" : addressList)) {
+            try {
+                addressCache.getAddress(address);
+                valid.add(address);
+            } catch (AddressException e) {
+                rejected.add(String.format("%s (%s)", address, e.getMessage()));
+            }
+        }
+        logger.debug("validateAddresses Finished");
+        return String.join(", ", valid);
+    }
+
+    /**
+     * Remove the given addresses from a list of addresses, e.g. the suppressed
+     * ones (see {@link RecipientFilter#isSuppressed(String)}).
+     * 
+     * @param addressList Email addresses separated by commas
+     * @param remove      Check if an address must be removed
+     * @param removed     List where the removed addresses are added
+     * @return Remaining addresses separated by commas, an empty String if none
+     *         remains
+     */
+    public static String removeAddresses(String addressList, Predicate<String> remove, List<String> removed) {
+        List<String> kept = new ArrayList<>();
+        for (String address : splitAddresses(addressList == null ? "" : addressList)) {
+            if (remove.test(address)) {
+                removed.add(address);
+            } else {
+                kept.add(address);
+            }
+        }
+        return String.join(", ", kept);
+    }
+
+    /**
+     * Split a list of addresses by the commas that are not quoted, nor inside a
+     * route (&lt;...&gt;) or a comment ((...)).
+     * 
+     * @param addressList Email addresses separated by commas
+     * @return Addresses without surrounding blanks, empty ones are discarded
+     */
+    private static List<String> splitAddresses(String addressList) {
+        List<String> addresses = new ArrayList<>();
+        StringBuilder address = new StringBuilder();
+        boolean quoted = false;
+        int nesting = 0;
+        for (int i = 0; i < addressList.length(); i++) {
+            char c = addressList.charAt(i);
+            if (c == '\\' && i + 1 < addressList.length()) {
+                address.append(c).append(addressList.charAt(++i));
+                continue;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted == false && (c == '<' || c == '(')) {
+                nesting++;
+            } else if (quoted == false && (c == '>' || c == ')') && nesting > 0) {
+                nesting--;
+            } else if (quoted == false && nesting == 0 && c == ',') {
+                addresses.add(address.toString().trim());
+                address.setLength(0);
+                continue;
+            }
+            address.append(c);
+        }
+        addresses.add(address.toString().trim());
+        addresses.removeIf(String::isEmpty);
+        return addresses;
+    }
+
     /**
      * Build a new {@link Message} according to the given email parameters.
      * 
@@ -90,11 +203,29 @@ public class EmailUtils {
      */
     private static Message createMessage(Session session, String from, String to, String subject, String body,
             String attachments) throws AddressException, MessagingException {
+        return createMessage(new MimeMessage(session), from, to, subject, body, attachments);
+    }
+
+    /**
+     * Fill the given {@link Message} according to the given email parameters.
+     * 
+     * @param message     Empty message to be filled
+     * @param from        Email from address (origin)
+     * @param to          Email to address (destination)
+     * @param subject     Email subject
+     * @param body        Email Body
+     * @param attachments Attachment file path to be sent, null or empty String
+     *                    when there is no attached file
+     * @return The given message
+     * @throws AddressException
+     * @throws MessagingException
+     */
+    private static Message createMessage(Message message, String from, String to, String subject, String body,
+            String attachments) throws AddressException, MessagingException {
         logger.debug("createMessage Started");
         // Create email message
-        Message message = new MimeMessage(session);
-        message.setFrom(new InternetAddress(from));
-        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
+        message.setFrom(addressCache.getAddress(from));
+        message.setRecipients(Message.RecipientType.TO, addressCache.getAddresses(to));
         message.setSubject(subject);
 
         // Create multipart message
@@ -125,9 +256,38 @@ public class EmailUtils {
         return message;
     }
 
+    /**
+     * Build an email and serialize it as a raw MIME message, recording the
+     * lifecycle phases of the email.
+     * 
+     * @param from        Email from address (origin)
+     * @param to          Email to address (destination)
+     * @param subject     Email subject
+     * @param body        Email Body
+     * @param attachments Attachment file path to be sent
+     * @param phases      Recorder of the lifecycle phases of the email
+     * @param seq         Sequence number of the email in the recorder
+     * @return Raw MIME message
+     * @throws AddressException
+     * @throws MessagingException
+     * @throws IOException
+     */
+    public static byte[] createRawMessage(String from, String to, String subject, String body, String attachments,
+            PhaseRecorder phases, long seq) throws AddressException, MessagingException, IOException {
+        Session session = Session.getDefaultInstance(new Properties());
+        Message message = createMessage(session, from, to, subject, body, attachments);
+        phases.mark(seq, PhaseRecorder.BUILT);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        message.writeTo(outputStream);
+        outputStream.close();
+        phases.mark(seq, PhaseRecorder.SERIALIZED);
+        return outputStream.toByteArray();
+    }
+
     /**
      * Send an email usin Amazon Simple Email Service and API V2 according to the
-     * given parameters.
+     * given parameters without waiting for the response. The message is built
+     * in the calling thread.
      * 
      * @param from        Email from address (origin)
      * @param to          Email to address (destination)
@@ -137,28 +297,88 @@ public class EmailUtils {
      *                    several, you need to provide several paths divided by OS
      *                    file separator. IN case you send null or empty String
      *                    there will not be attached files into the email message
-     * @return {@link SendEmailResponse} with the response given by Amazon Simple
-     *         Email Service.
+     * @param phases      Recorder of the lifecycle phases of the email
+     * @param seq         Sequence number of the email in the recorder
+     * @return {@link CompletableFuture} completed with the response given by
+     *         Amazon Simple Email Service.
      * @throws AddressException
      * @throws MessagingException
      * @throws IOException
      */
-    public static SendEmailResponse sendEmailWithApi(SesV2AsyncClient client, String from, String to,
-            String subject, String body,
-            String attachments) throws AddressException, MessagingException, IOException {
+    public static CompletableFuture<SendEmailResponse> sendEmailWithApiAsync(SesV2AsyncClient client, String from,
+            String to, String subject, String body, String attachments, PhaseRecorder phases, long seq)
+            throws AddressException, MessagingException, IOException {
+        byte[] messageByteArray = createRawMessage(from, to, subject, body, attachments, phases, seq);
+        return sendRawEmailWithApiAsync(client, messageByteArray, phases, seq);
+    }
+
+    /**
+     * Send an email already serialized (see
+     * {@link #createRawMessage(String, String, String, String, String, PhaseRecorder, long)})
+     * using Amazon Simple Email Service and API V2 without waiting for the
+     * response.
+     * 
+     * @param messageByteArray Raw MIME message, it must not be modified
+     *                         afterwards
+     * @param phases           Recorder of the lifecycle phases of the email
+     * @param seq              Sequence number of the email in the recorder
+     * @return {@link CompletableFuture} completed with the response given by
+     *         Amazon Simple Email Service.
+     */
+    public static CompletableFuture<SendEmailResponse> sendRawEmailWithApiAsync(SesV2AsyncClient client,
+            byte[] messageByteArray, PhaseRecorder phases, long seq) {
         logger.debug("sendEmail Started");
-        Session session = Session.getDefaultInstance(new Properties());
-        Message message = createMessage(session, from, to, subject, body, attachments);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        message.writeTo(outputStream);
-        byte[] messageByteArray = outputStream.toByteArray();
-        outputStream.close();
-        SdkBytes sdkBytes = SdkBytes.fromByteArray(messageByteArray);
+        // The array is not shared, so it is not copied
+        SdkBytes sdkBytes = SdkBytes.fromByteArrayUnsafe(messageByteArray);
         RawMessage rawMessage = RawMessage.builder().data(sdkBytes).build();
         EmailContent emailContent = EmailContent.builder().raw(rawMessage).build();
-        SendEmailRequest sendEmailRequest = SendEmailRequest.builder().content(emailContent).build();
+        SendEmailRequest.Builder sendEmailRequestBuilder = SendEmailRequest.builder().content(emailContent);
+        if (phases.isConnectionWaitSampled(seq)) {
+            // Get the time waiting for a connection of the pool from SDK metrics, only sampled as it is not free
+            sendEmailRequestBuilder.overrideConfiguration(AwsRequestOverrideConfiguration.builder()
+                    .addMetricPublisher(new ConnectionWaitPublisher(phases, seq)).build());
+        }
+        CompletableFuture<SendEmailResponse> response = client.sendEmail(sendEmailRequestBuilder.build());
+        phases.mark(seq, PhaseRecorder.DISPATCHED);
         logger.debug("sendEmail Finished");
-        return client.sendEmail(sendEmailRequest).join();
+        return response.thenApply(sendEmailResponse -> {
+            phases.mark(seq, PhaseRecorder.RESPONDED);
+            return sendEmailResponse;
+        });
+    }
+
+    /**
+     * Publish the time a request waited for a connection of the HTTP client pool
+     * into a {@link PhaseRecorder}.
+     */
+    private static class ConnectionWaitPublisher implements MetricPublisher {
+        private final PhaseRecorder phases;
+        private final long seq;
+
+        ConnectionWaitPublisher(PhaseRecorder phases, long seq) {
+            this.phases = phases;
+            this.seq = seq;
+        }
+
+        @Override
+        public void publish(MetricCollection metricCollection) {
+            phases.recordConnectionWait(seq, getConnectionWait(metricCollection));
+        }
+
+        private static long getConnectionWait(MetricCollection metricCollection) {
+            long wait = 0;
+            for (Duration duration : metricCollection.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)) {
+                wait += duration.toNanos();
+            }
+            for (MetricCollection child : metricCollection.children()) {
+                wait += getConnectionWait(child);
+            }
+            return wait;
+        }
+
+        @Override
+        public void close() {
+        }
     }
 
     /**
@@ -182,6 +402,8 @@ public class EmailUtils {
         props.put("mail.smtp.starttls.enable", "true");
         props.put("mail.smtp.host", settings.getHost());
         props.put("mail.smtp.port", settings.getPort());
+        // Send to the valid recipients when the server rejects some of them
+        props.put("mail.smtp.sendpartial", "true");
 
         // Create a new authenticated instance
         session = Session.getInstance(props, new Authenticator() {
@@ -250,10 +472,11 @@ public class EmailUtils {
     }
 
     /**
-     * Send email to Simple Email Service using SMTP and Java Mail API.
+     * Send email to Simple Email Service using SMTP and Java Mail API, reusing
+     * the connections of the given pool and recording the lifecycle phases of
+     * the email.
      * 
-     * @param session     Object with previously opened session to be reused by all
-     *                    the calls.
+     * @param pool        Pool of connected transports
      * @param from        Email from address (origin)
      * @param to          Email to address (destination)
      * @param subject     Email subject
@@ -262,19 +485,227 @@ public class EmailUtils {
      *                    several, you need to provide several paths divided by OS
      *                    file separator. IN case you send null or empty String
      *                    there will not be attached files into the email message
-     * @return true if email was sent successfully, false otherwise.
+     * @param phases      Recorder of the lifecycle phases of the email
+     * @param seq         Sequence number of the email in the recorder
+     * @return Message id given by the server, null if it did not give one
      * @throws AddressException
      * @throws MessagingException
      */
-    public static boolean sendEmailWithSmtp(Session session, String from, String to, String subject, String body,
-            String attachments) throws AddressException, MessagingException {
+    public static String sendEmailWithSmtp(SmtpTransportPool pool, String from, String to, String subject,
+            String body, String attachments, PhaseRecorder phases, long seq)
+            throws AddressException, MessagingException {
+        Message message = createMessage(pool.getSession(), from, to, subject, body, attachments);
+        message.saveChanges();
+        phases.mark(seq, PhaseRecorder.BUILT);
+        // Message is serialized while it is sent
+        return sendMessageWithSmtp(pool, message, phases, seq);
+    }
+
+    /**
+     * Build an email and serialize it to be sent later with SMTP (see
+     * {@link #sendMessageWithSmtp(SmtpTransportPool, Message, PhaseRecorder, long)}),
+     * recording the lifecycle phases of the email.
+     * 
+     * @param session     Session the message belongs to
+     * @param from        Email from address (origin)
+     * @param to          Email to address (destination)
+     * @param subject     Email subject
+     * @param body        Email Body
+     * @param attachments Attachment file path to be sent
+     * @param phases      Recorder of the lifecycle phases of the email
+     * @param seq         Sequence number of the email in the recorder
+     * @return Serialized message
+     * @throws AddressException
+     * @throws MessagingException
+     * @throws IOException
+     */
+    public static RenderedMessage renderSmtpMessage(Session session, String from, String to, String subject,
+            String body, String attachments, PhaseRecorder phases, long seq)
+            throws AddressException, MessagingException, IOException {
+        RenderedMessage message = new RenderedMessage(session);
+        createMessage(message, from, to, subject, body, attachments);
+        message.saveChanges();
+        phases.mark(seq, PhaseRecorder.BUILT);
+        message.render();
+        phases.mark(seq, PhaseRecorder.SERIALIZED);
+        return message;
+    }
+
+    /**
+     * Build an email to be sent at once to several recipients with SMTP (see
+     * {@link #sendMessageWithSmtp(SmtpTransportPool, Message, List, PhaseRecorder, long)})
+     * and serialize it. Recipients are not in the headers, only in the SMTP
+     * envelope, as with Bcc.
+     * 
+     * @param session     Session the message belongs to
+     * @param from        Email from address (origin)
+     * @param subject     Email subject
+     * @param body        Email Body
+     * @param attachments Attachment file path to be sent
+     * @param phases      Recorder of the lifecycle phases of the email
+     * @param seq         Sequence number of the email in the recorder
+     * @return Serialized message
+     * @throws AddressException
+     * @throws MessagingException
+     * @throws IOException
+     */
+    public static RenderedMessage renderSmtpBatchMessage(Session session, String from, String subject,
+            String body, String attachments, PhaseRecorder phases, long seq)
+            throws AddressException, MessagingException, IOException {
+        return renderSmtpMessage(session, from, UNDISCLOSED_RECIPIENTS, subject, body, attachments, phases, seq);
+    }
+
+    /**
+     * Send a message already built with SMTP, reusing the connections of the
+     * given pool and recording the lifecycle phases of the email.
+     * 
+     * @param pool    Pool of connected transports
+     * @param message Message to be sent
+     * @param phases  Recorder of the lifecycle phases of the email
+     * @param seq     Sequence number of the email in the recorder
+     * @return Message id given by the server, null if it did not give one
+     * @throws MessagingException
+     */
+    public static String sendMessageWithSmtp(SmtpTransportPool pool, Message message, PhaseRecorder phases,
+            long seq) throws MessagingException {
+        return sendMessageWithSmtp(pool, message, message.getAllRecipients(), phases, seq);
+    }
+
+    /**
+     * Send a message already built with SMTP to the given recipients in a
+     * single transaction (one <code>RCPT TO</code> for each recipient and the
+     * content once), reusing the connections of the given pool and recording
+     * the lifecycle phases of the email. If the server rejects some recipients,
+     * the message is still sent to the rest of them.
+     * 
+     * @param pool       Pool of connected transports
+     * @param message    Message to be sent
+     * @param recipients Recipients of the message, each one can have several
+     *                   addresses separated by commas
+     * @param phases     Recorder of the lifecycle phases of the email
+     * @param seq        Sequence number of the email in the recorder
+     * @return Message id given by the server, null if it did not give one
+     * @throws AddressException
+     * @throws MessagingException    In case the message has not been sent to
+     *                               any recipient
+     * @throws PartialSendException In case the message has been sent to some
+     *                               recipients only: a recipient counts as sent
+     *                               when all its addresses have been sent
+     */
+    public static String sendMessageWithSmtp(SmtpTransportPool pool, Message message, List<String> recipients,
+            PhaseRecorder phases, long seq) throws AddressException, MessagingException, PartialSendException {
+        List<Address> addresses = new ArrayList<>(recipients.size());
+        for (String to : recipients) {
+            addresses.addAll(Arrays.asList(addressCache.getAddresses(to)));
+        }
+        try {
+            return sendMessageWithSmtp(pool, message, addresses.toArray(new Address[0]), phases, seq);
+        } catch (SendFailedException e) {
+            Address[] validSent = e.getValidSentAddresses();
+            if (validSent == null || validSent.length == 0) {
+                throw e;
+            }
+            Set<Address> sentAddresses = new HashSet<>(Arrays.asList(validSent));
+            List<String> sent = new ArrayList<>(recipients.size());
+            List<String> failed = new ArrayList<>();
+            for (String to : recipients) {
+                boolean allSent = true;
+                for (Address address : addressCache.getAddresses(to)) {
+                    allSent &= sentAddresses.contains(address);
+                }
+                (allSent ? sent : failed).add(to);
+            }
+            // With partial sends the server response to the content is the error message,
+            // and the rejections of the recipients are chained to it
+            String messageId = e instanceof SMTPSendFailedException ? getSmtpMessageId(e.getMessage()) : null;
+            throw new PartialSendException(messageId, sent, failed,
+                    e.getNextException() != null ? e.getNextException() : e);
+        }
+    }
+
+    private static String sendMessageWithSmtp(SmtpTransportPool pool, Message message, Address[] recipients,
+            PhaseRecorder phases, long seq) throws MessagingException {
         logger.debug("sendEmail Started");
-        boolean emailSentOk = false;
-        Message message = null;
-        message = createMessage(session, from, to, subject, body, attachments);
-        Transport.send(message);
-        emailSentOk = true;
+        Transport transport = pool.borrow();
+        phases.mark(seq, PhaseRecorder.DISPATCHED);
+        String messageId;
+        try {
+            transport.sendMessage(message, recipients);
+            messageId = transport instanceof SMTPTransport
+                    ? getSmtpMessageId(((SMTPTransport) transport).getLastServerResponse())
+                    : null;
+        } catch (MessagingException e) {
+            // Rejected recipients leave the connection usable, other errors may not
+            if (e instanceof SendFailedException && transport.isConnected()) {
+                pool.release(transport);
+            } else {
+                pool.discard(transport);
+            }
+            throw e;
+        }
+        pool.release(transport);
+        phases.mark(seq, PhaseRecorder.RESPONDED);
         logger.debug("sendEmail Finished");
-        return emailSentOk;
+        return messageId;
+    }
+
+    /**
+     * Get the message id from the response of the SMTP server to a message,
+     * Amazon Simple Email Service replies <code>250 Ok &lt;message id&gt;</code>.
+     * 
+     * @param response Last response of the server
+     * @return Message id, null if the response does not have one
+     */
+    static String getSmtpMessageId(String response) {
+        if (response == null) {
+            return null;
+        }
+        String[] parts = response.trim().split("\\s+");
+        if (parts.length == 3 && "250".equals(parts[0]) && parts[2].matches("[0-9A-Za-z]+(-[0-9A-Za-z]+)+")) {
+            return parts[2];
+        }
+        return null;
+    }
+
+    /**
+     * Check if an error is a throttling response, so the sending rate must be
+     * reduced: HTTP 429 (or any throttling error) for the API, 421 or 454 reply
+     * codes for SMTP (e.g. "454 Throttling failure: Maximum sending rate
+     * exceeded").
+     * 
+     * @param error Error got when sending an email
+     * @return true if it is a throttling response
+     */
+    public static boolean isThrottlingError(Throwable error) {
+        Throwable cause = error;
+        while (cause != null) {
+            if (cause instanceof SdkServiceException) {
+                SdkServiceException serviceException = (SdkServiceException) cause;
+                return serviceException.isThrottlingException() || serviceException.statusCode() == 429;
+            }
+            int returnCode = getSmtpReturnCode(cause);
+            if (returnCode == 421 || returnCode == 454) {
+                return true;
+            }
+            Throwable next = cause.getCause();
+            if (next == null && cause instanceof MessagingException) {
+                next = ((MessagingException) cause).getNextException();
+            }
+            cause = next == cause ? null : next;
+        }
+        return false;
+    }
+
+    private static int getSmtpReturnCode(Throwable error) {
+        if (error instanceof SMTPSendFailedException) {
+            return ((SMTPSendFailedException) error).getReturnCode();
+        }
+        if (error instanceof SMTPSenderFailedException) {
+            return ((SMTPSenderFailedException) error).getReturnCode();
+        }
+        if (error instanceof SMTPAddressFailedException) {
+            return ((SMTPAddressFailedException) error).getReturnCode();
+        }
+        return -1;
     }
 }
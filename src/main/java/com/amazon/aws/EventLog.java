@@ -0,0 +1,286 @@
+package com.amazon.aws;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log of the outcome of each email sent, written as JSON lines by a
+ * background thread so sending never waits for the output.
+ *
+ * Events are recorded into a preallocated ring buffer without locks: each
+ * sender claims a slot, fills it and publishes it. Recording only copies
+ * references (recipients, response or error), they are formatted by the writer
+ * thread, which drains all the events published and writes them at once. When
+ * the buffer is full (the writer cannot keep up) events are dropped and
+ * counted instead of slowing down sending.
+ *
+ * On close the writer seals the claims, so events recorded afterwards are
+ * dropped (and counted), and writes the events already claimed, waiting a
+ * bounded time for the ones still being filled. Claimed events it could not
+ * write are counted as dropped too.
+ */
+public class EventLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+
+    /**
+     * Default number of events held until they are written
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * Time the writer waits for new events when there are none
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Maximum time the writer waits on close for the events being filled
+     */
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Claims once the writer has been closed, far beyond any real claim so
+     * every new claim finds the buffer full
+     */
+    private static final long SEALED = Long.MAX_VALUE / 2;
+
+    private static final String SENT = "sent";
+    private static final String FAILED = "failed";
+
+    /**
+     * Slot of the ring buffer, reused by all the events recorded into it.
+     */
+    private static class Event {
+        long time;
+        long seq;
+        String outcome;
+        Object recipients;
+        long latencyNanos;
+        Object detail;
+    }
+
+    private final Path file;
+    private final Writer writer;
+    private final int mask;
+    private final Event[] events;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread thread;
+    private final StringBuilder line = new StringBuilder();
+    private volatile boolean closed = false;
+    private long written = 0;
+
+    private EventLog(Path file, Writer writer, int capacity) {
+        this.file = file;
+        this.writer = writer;
+        this.mask = capacity - 1;
+        this.events = new Event[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            events[slot] = new Event();
+            published.set(slot, -1);
+        }
+        this.thread = new Thread(this::run, "event-log");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Open a new event log, the file is overwritten when it exists.
+     *
+     * @param file     File to write the events into
+     * @param capacity Number of events held until they are written, rounded up
+     *                 to a power of two
+     * @return New event log with its writer thread started
+     * @throws IOException In case the file cannot be created
+     */
+    public static EventLog open(Path file, int capacity) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        EventLog eventLog = new EventLog(file, writer, size);
+        eventLog.thread.start();
+        return eventLog;
+    }
+
+    /**
+     * Record an email sent.
+     *
+     * @param seq          Sequence number of the email @see
+     *                     {@link PhaseRecorder#start()}
+     * @param recipients   Recipient(s) of the email, a String or a List of them
+     * @param latencyNanos Time taken to send the email in nanoseconds
+     * @param response     Response of the transport, it can be null
+     */
+    public void recordSent(long seq, Object recipients, long latencyNanos, Object response) {
+        record(seq, SENT, recipients, latencyNanos, response);
+    }
+
+    /**
+     * Record an email that could not be sent.
+     *
+     * @param seq        Sequence number of the email @see
+     *                   {@link PhaseRecorder#start()}
+     * @param recipients Recipient(s) of the email, a String or a List of them
+     * @param error      Error got when sending the email
+     */
+    public void recordFailed(long seq, Object recipients, Throwable error) {
+        record(seq, FAILED, recipients, -1, error);
+    }
+
+    private void record(long seq, String outcome, Object recipients, long latencyNanos, Object detail) {
+        long claim;
+        do {
+            claim = claimed.get();
+            if (closed || claim - consumed.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (claimed.compareAndSet(claim, claim + 1) == false);
+        int slot = (int) (claim & mask);
+        Event event = events[slot];
+        event.time = System.currentTimeMillis();
+        event.seq = seq;
+        event.outcome = outcome;
+        event.recipients = recipients;
+        event.latencyNanos = latencyNanos;
+        event.detail = detail;
+        published.set(slot, claim);
+    }
+
+    /**
+     * Get the number of events dropped because the buffer was full.
+     *
+     * @return Dropped events
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        long sealed = -1;
+        try {
+            while (closed == false) {
+                if (drain() > 0) {
+                    writer.flush();
+                } else {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+            // No more claims, write the claimed events once they are published
+            sealed = claimed.getAndSet(SEALED);
+            long deadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+            while (consumed.get() < sealed && System.nanoTime() < deadline) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Error writing event log {}", file, e);
+            // Stop recording, events are dropped instead
+            closed = true;
+        }
+        if (sealed < 0) {
+            sealed = claimed.getAndSet(SEALED);
+        }
+        dropped.addAndGet(sealed - consumed.get());
+    }
+
+    /**
+     * Write all the events published so far.
+     *
+     * @return Number of events written
+     */
+    private int drain() throws IOException {
+        int drained = 0;
+        long next = consumed.get();
+        while (true) {
+            int slot = (int) (next & mask);
+            if (published.get(slot) != next) {
+                break;
+            }
+            Event event = events[slot];
+            write(event);
+            event.recipients = null;
+            event.detail = null;
+            next++;
+            consumed.set(next);
+            drained++;
+        }
+        written += drained;
+        return drained;
+    }
+
+    private void write(Event event) throws IOException {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(event.time)).append('"');
+        line.append(",\"seq\":").append(event.seq);
+        line.append(",\"outcome\":\"").append(event.outcome).append('"');
+        line.append(",\"to\":\"").append(RunReport.escapeJson(formatRecipients(event.recipients))).append('"');
+        if (event.detail instanceof Throwable) {
+            Throwable error = (Throwable) event.detail;
+            line.append(",\"error\":\"").append(RunReport.escapeJson(SendStatistics.getErrorType(error)))
+                    .append('"');
+            line.append(",\"message\":\"").append(RunReport.escapeJson(String.valueOf(error.getMessage())))
+                    .append('"');
+        } else {
+            line.append(",\"latencyMs\":").append(event.latencyNanos / 1_000_000.0);
+            if (event.detail != null) {
+                line.append(",\"response\":\"").append(RunReport.escapeJson(event.detail.toString())).append('"');
+            }
+        }
+        line.append("}\n");
+        writer.append(line);
+    }
+
+    private static String formatRecipients(Object recipients) {
+        if (recipients instanceof List) {
+            StringBuilder joined = new StringBuilder();
+            for (Object to : (List<?>) recipients) {
+                if (joined.length() > 0) {
+                    joined.append(',');
+                }
+                joined.append(to);
+            }
+            return joined.toString();
+        }
+        return String.valueOf(recipients);
+    }
+
+    /**
+     * Write the events recorded so far and close the file. Events recorded
+     * afterwards, or not published within a bounded time, are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Error closing event log {}", file, e);
+        }
+        if (dropped.get() > 0) {
+            logger.warn("Event log: {} events dropped, the writer could not keep up", dropped.get());
+        }
+        logger.info("Event log: {} events written to {}", written, file);
+    }
+}
@@ -0,0 +1,135 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.mail.MessagingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Writes each email as a <code>.eml</code> file (raw MIME message) into a
+ * directory instead of sending it, so the emails can be inspected and the
+ * client side ceiling of the tool can be measured with local disk instead of
+ * network.
+ *
+ * Each run writes into its own subdirectory, named after the time it started
+ * (e.g. <code>run-20261019-103000</code>), so runs do not overwrite the emails
+ * of the previous ones.
+ */
+public class FileEmailTransport implements EmailTransport {
+    private static final Logger logger = LoggerFactory.getLogger(FileEmailTransport.class);
+
+    /**
+     * Name of the transport
+     */
+    public static final String NAME = "FILE";
+
+    private static final DateTimeFormatter RUN_FORMAT = DateTimeFormatter.ofPattern("'run-'yyyyMMdd-HHmmss");
+
+    private final Path directory;
+    private final SendEmailInfo sendEmailInfo;
+    private final Scheduler scheduler;
+    private final AtomicLong emails = new AtomicLong();
+
+    /**
+     * Create a new transport.
+     *
+     * @param directory     Directory where the emails are written, it must exist
+     * @param sendEmailInfo Information got from command line
+     */
+    public FileEmailTransport(Path directory, SendEmailInfo sendEmailInfo) {
+        this.directory = directory;
+        this.sendEmailInfo = sendEmailInfo;
+        int threads = sendEmailInfo.isAdaptive() ? sendEmailInfo.getMaxConcurrency()
+                : sendEmailInfo.getConcurrency();
+        this.scheduler = Schedulers.newBoundedElastic(threads, Integer.MAX_VALUE, "file-send");
+    }
+
+    @Override
+    public Mono<?> send(String to, PhaseRecorder phases, long seq) {
+        return Mono.fromCallable(() -> write((byte[]) render(to, phases, seq), phases, seq));
+    }
+
+    @Override
+    public Object render(String to, PhaseRecorder phases, long seq) throws MessagingException, IOException {
+        return EmailUtils.createRawMessage(sendEmailInfo.getFrom(), to, sendEmailInfo.getSubject(),
+                sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases, seq);
+    }
+
+    @Override
+    public Mono<?> send(String to, Object rendered, PhaseRecorder phases, long seq) {
+        if (rendered instanceof byte[]) {
+            return Mono.fromCallable(() -> write((byte[]) rendered, phases, seq));
+        }
+        return send(to, phases, seq);
+    }
+
+    private Path write(byte[] message, PhaseRecorder phases, long seq) throws IOException {
+        Path file = directory.resolve(String.format("email-%08d.eml", emails.incrementAndGet()));
+        phases.mark(seq, PhaseRecorder.DISPATCHED);
+        Files.write(file, message);
+        phases.mark(seq, PhaseRecorder.RESPONDED);
+        return file;
+    }
+
+    @Override
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+        logger.info("{} emails written to {}", emails.get(), directory);
+    }
+
+    /**
+     * Provider of {@link FileEmailTransport}.
+     */
+    public static class Provider implements EmailTransportProvider {
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public EmailTransport create(SendEmailInfo sendEmailInfo) {
+            try {
+                Path directory = createRunDirectory(Paths.get(sendEmailInfo.getSinkDirectory()));
+                return new FileEmailTransport(directory, sendEmailInfo);
+            } catch (IOException | InvalidPathException e) {
+                logger.error("Cannot create directory {}", sendEmailInfo.getSinkDirectory(), e);
+                return null;
+            }
+        }
+
+        /**
+         * Create the subdirectory of this run, adding a suffix to its name when
+         * another run started in the same second.
+         */
+        private static Path createRunDirectory(Path parent) throws IOException {
+            Files.createDirectories(parent);
+            String name = LocalDateTime.now().format(RUN_FORMAT);
+            for (int attempt = 1;; attempt++) {
+                try {
+                    return Files.createDirectory(parent.resolve(attempt == 1 ? name : name + "-" + attempt));
+                } catch (FileAlreadyExistsException e) {
+                    // Try the next suffix
+                }
+            }
+        }
+    }
+}
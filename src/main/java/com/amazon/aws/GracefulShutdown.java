@@ -0,0 +1,87 @@
+package com.amazon.aws;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles the shutdown of the JVM (e.g. SIGTERM) while emails are being sent.
+ *
+ * Once installed, a shutdown request stops sending new emails (see
+ * {@link #isDraining()}) and holds the JVM until the emails in flight have been
+ * drained and the summary has been shown (see {@link #finished()}), up to the
+ * drain timeout.
+ */
+public class GracefulShutdown {
+    private static final Logger logger = LoggerFactory.getLogger(GracefulShutdown.class);
+
+    /**
+     * Time given to show the summary after the drain timeout.
+     */
+    private static final Duration SUMMARY_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Duration drainTimeout;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean draining = false;
+
+    /**
+     * Create a new object.
+     *
+     * @param drainTimeout Maximum time to wait for the emails in flight once
+     *                     sending has stopped
+     */
+    public GracefulShutdown(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Install the JVM shutdown hook.
+     */
+    public void install() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "graceful-shutdown"));
+    }
+
+    /**
+     * Get the maximum time to wait for the emails in flight once sending has
+     * stopped.
+     *
+     * @return Drain timeout
+     */
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Check if a shutdown has been requested, so no new emails must be sent.
+     *
+     * @return true if the emails in flight are being drained
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Notify that all the work has finished, so the JVM can exit.
+     */
+    public void finished() {
+        finished.countDown();
+    }
+
+    private void drain() {
+        if (finished.getCount() == 0) {
+            return;
+        }
+        logger.warn("Shutdown requested, draining emails in flight...");
+        draining = true;
+        try {
+            if (finished.await(drainTimeout.plus(SUMMARY_TIMEOUT).toMillis(), TimeUnit.MILLISECONDS) == false) {
+                logger.warn("Emails in flight could not be drained before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
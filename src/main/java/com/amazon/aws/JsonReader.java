@@ -0,0 +1,242 @@
+package com.amazon.aws;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal reader of JSON documents, enough to read the notifications of Amazon
+ * Simple Email Service (see {@link NotificationCorrelator}) and the run reports
+ * (see {@link RunReport#read(java.nio.file.Path)}).
+ *
+ * Objects are read as {@link Map}, arrays as {@link List}, numbers as
+ * {@link Double}, and strings, booleans and null as themselves. Several
+ * documents can follow each other (e.g. one per line).
+ */
+public class JsonReader {
+    private final String json;
+    private int position = 0;
+
+    /**
+     * Create a new reader.
+     *
+     * @param json Content with zero or more JSON documents
+     */
+    public JsonReader(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Check if there is another document.
+     *
+     * @return true if there is another document to read
+     */
+    public boolean hasNext() {
+        skipWhitespace();
+        return position < json.length();
+    }
+
+    /**
+     * Read the next document.
+     *
+     * @return Value of the document
+     * @throws IllegalArgumentException In case the content is not valid JSON
+     */
+    public Object next() throws IllegalArgumentException {
+        skipWhitespace();
+        return readValue();
+    }
+
+    /**
+     * Get a member of nested objects, e.g. <code>get(notification, "mail",
+     * "messageId")</code>.
+     *
+     * @param value Object to start from
+     * @param names Names of the members to follow
+     * @return Value of the last member, null if any of them does not exist
+     */
+    public static Object get(Object value, String... names) {
+        for (String name : names) {
+            if (value instanceof Map == false) {
+                return null;
+            }
+            value = ((Map<?, ?>) value).get(name);
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        if (position >= json.length()) {
+            throw error("value expected");
+        }
+        char c = json.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            skipWhitespace();
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (position < json.length()) {
+            char c = json.charAt(position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (position >= json.length()) {
+                break;
+            }
+            char escaped = json.charAt(position++);
+            switch (escaped) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append(readUnicodeEscape());
+                    break;
+                default:
+                    value.append(escaped);
+                    break;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    /**
+     * Read the 4 hexadecimal digits of a unicode escape.
+     */
+    private char readUnicodeEscape() {
+        if (position + 4 > json.length()) {
+            throw error("truncated unicode escape");
+        }
+        int code = 0;
+        for (int end = position + 4; position < end; position++) {
+            char c = json.charAt(position);
+            // Only ASCII digits, Character.digit accepts digits of other scripts
+            int digit = c >= '0' && c <= '9' ? c - '0'
+                    : c >= 'a' && c <= 'f' ? c - 'a' + 10 : c >= 'A' && c <= 'F' ? c - 'A' + 10 : -1;
+            if (digit < 0) {
+                throw error("invalid unicode escape");
+            }
+            code = code * 16 + digit;
+        }
+        return (char) code;
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (json.startsWith(literal, position) == false) {
+            throw error("invalid literal");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private Double readNumber() {
+        int start = position;
+        while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(json.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("invalid value");
+        }
+    }
+
+    private char peek() {
+        return position < json.length() ? json.charAt(position) : 0;
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw error("'" + expected + "' expected");
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("Invalid JSON: %s at position %d", message, position));
+    }
+}
@@ -0,0 +1,295 @@
+package com.amazon.aws;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Dispatches the recipients to the send pipeline through priority lanes (e.g.
+ * transactional and bulk), so bulk emails do not delay the urgent ones.
+ *
+ * Recipients are read ahead into a bounded queue per lane (see
+ * {@link Recipient#getLane()}). When the pipeline has room for another email,
+ * the lane is chosen by smooth weighted round robin among the lanes with
+ * emails waiting: each lane gets a share of the pipeline proportional to its
+ * weight while it has emails, and the lanes with emails use the share of the
+ * empty ones. Each lane reads its recipients on its own (see
+ * {@link #split(Flux)}) and stops reading while its queue is full, so a full
+ * lane does not hold back the recipients of the others.
+ *
+ * The time each email waits in its lane is recorded into the statistics of the
+ * lane (see {@link SendStatistics#getLaneStatistics(String)}).
+ */
+public class LaneDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(LaneDispatcher.class);
+
+    private final String[] names;
+    private final int[] weights;
+    private final int capacity;
+    private final Set<String> unknownLanes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a new dispatcher.
+     *
+     * @param lanes    Weight of each lane, the first one is the default lane of
+     *                 the recipients without lane
+     * @param capacity Maximum number of emails waiting in each lane
+     */
+    public LaneDispatcher(Map<String, Integer> lanes, int capacity) {
+        this.names = lanes.keySet().toArray(new String[0]);
+        this.weights = lanes.values().stream().mapToInt(Integer::intValue).toArray();
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    /**
+     * Parse the lanes and their weights, e.g.
+     * <code>transactional:9,bulk:1</code>. The weight is optional, default to
+     * 1.
+     *
+     * @param lanes Comma separated lanes
+     * @return Weight of each lane, in the given order
+     * @throws IllegalArgumentException In case a lane name or weight is not
+     *                                  valid, or a lane is repeated
+     */
+    public static Map<String, Integer> parseLanes(String lanes) throws IllegalArgumentException {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String lane : lanes.split(",")) {
+            String[] parts = lane.trim().split(":", 2);
+            String name = parts[0].trim();
+            if (name.matches(Recipient.LANE_PATTERN) == false || weights.containsKey(name)) {
+                throw new IllegalArgumentException("Invalid lane: " + lane);
+            }
+            int weight = 1;
+            if (parts.length > 1) {
+                try {
+                    weight = Integer.parseInt(parts[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid weight of lane: " + lane, e);
+                }
+                if (weight < 1) {
+                    throw new IllegalArgumentException("Invalid weight of lane: " + lane);
+                }
+            }
+            weights.put(name, weight);
+        }
+        return weights;
+    }
+
+    /**
+     * Split the recipients into the lanes, so each lane reads its recipients on
+     * its own and a full lane does not stop reading the others. Recipients
+     * without lane, or with an unknown one, go to the default lane.
+     *
+     * @param recipients Recipients to be sent, subscribed once per lane (e.g.
+     *                   the recipients file is read once per lane)
+     * @return Recipients of each lane, in the order of the lanes
+     */
+    public List<Flux<Recipient>> split(Flux<Recipient> recipients) {
+        List<Flux<Recipient>> lanes = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            int lane = i;
+            lanes.add(recipients.filter(recipient -> getLane(recipient) == lane));
+        }
+        return lanes;
+    }
+
+    /**
+     * Dispatch the recipients through the lanes.
+     *
+     * @param lanes     Recipients of each lane (see {@link #split(Flux)}), each
+     *                  one read ahead up to the capacity of its lane. It can be
+     *                  empty.
+     * @param scheduled Recipients of any lane already held in memory, e.g. the
+     *                  scheduled emails whose time has arrived (see
+     *                  {@link ScheduledSends}). They are read as they come.
+     * @param stats     Statistics to record the time waited in each lane into
+     * @return Recipients in the order they have to be sent
+     */
+    public Flux<Recipient> dispatch(List<Flux<Recipient>> lanes, Flux<Recipient> scheduled, SendStatistics stats) {
+        return Flux.create(sink -> {
+            Dispatch dispatch = new Dispatch(sink, stats, lanes.size() + 1);
+            sink.onRequest(requested -> dispatch.drain());
+            sink.onDispose(dispatch::dispose);
+            for (int i = 0; i < lanes.size(); i++) {
+                lanes.get(i).subscribe(dispatch.new Reader(i));
+            }
+            scheduled.subscribe(dispatch.new Reader(-1));
+        });
+    }
+
+    private int getLane(Recipient recipient) {
+        if (recipient.getLane() == null) {
+            return 0;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(recipient.getLane())) {
+                return i;
+            }
+        }
+        if (unknownLanes.add(recipient.getLane())) {
+            logger.warn("Unknown lane {}, its recipients are sent through lane {}", recipient.getLane(), names[0]);
+        }
+        return 0;
+    }
+
+    private static final class Queued {
+        private final Recipient recipient;
+        private final long queuedNanos;
+
+        private Queued(Recipient recipient, long queuedNanos) {
+            this.recipient = recipient;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    /**
+     * Dispatch of one sequence of recipients. All the state is guarded by the
+     * object monitor, emissions are serialized by the emitting flag.
+     */
+    private final class Dispatch {
+        private final FluxSink<Recipient> sink;
+        private final List<ArrayDeque<Queued>> queues = new ArrayList<>();
+        private final SendStatistics[] laneStats;
+        private final int[] current;
+        private final Reader[] paused;
+        private final List<Reader> readers = new ArrayList<>();
+        private int reading;
+        private boolean emitting = false;
+        private boolean missed = false;
+
+        private Dispatch(FluxSink<Recipient> sink, SendStatistics stats, int sources) {
+            this.sink = sink;
+            this.laneStats = new SendStatistics[names.length];
+            this.current = new int[names.length];
+            this.paused = new Reader[names.length];
+            this.reading = sources;
+            for (int i = 0; i < names.length; i++) {
+                queues.add(new ArrayDeque<>());
+                laneStats[i] = stats.getLaneStatistics(names[i]);
+            }
+        }
+
+        /**
+         * Reader of the recipients of one lane, or of the scheduled ones when
+         * the lane is negative.
+         */
+        private final class Reader extends BaseSubscriber<Recipient> {
+            private final int lane;
+
+            private Reader(int lane) {
+                this.lane = lane;
+            }
+
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                synchronized (Dispatch.this) {
+                    readers.add(this);
+                }
+                if (lane < 0) {
+                    requestUnbounded();
+                } else {
+                    request(1);
+                }
+            }
+
+            @Override
+            protected void hookOnNext(Recipient recipient) {
+                synchronized (Dispatch.this) {
+                    Queued queued = new Queued(recipient, System.nanoTime());
+                    if (lane < 0) {
+                        queues.get(getLane(recipient)).add(queued);
+                    } else {
+                        queues.get(lane).add(queued);
+                        if (queues.get(lane).size() < capacity) {
+                            request(1);
+                        } else {
+                            // Stop reading the lane until it has room
+                            paused[lane] = this;
+                        }
+                    }
+                    drain();
+                }
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                synchronized (Dispatch.this) {
+                    reading--;
+                    drain();
+                }
+            }
+
+            @Override
+            protected void hookOnError(Throwable error) {
+                sink.error(error);
+            }
+        }
+
+        private synchronized void drain() {
+            if (emitting) {
+                missed = true;
+                return;
+            }
+            emitting = true;
+            do {
+                missed = false;
+                int lane;
+                while (sink.isCancelled() == false && sink.requestedFromDownstream() > 0 && (lane = next()) >= 0) {
+                    Queued queued = queues.get(lane).poll();
+                    laneStats[lane].recordSuccess(System.nanoTime() - queued.queuedNanos);
+                    sink.next(queued.recipient);
+                    if (paused[lane] != null && queues.get(lane).size() < capacity) {
+                        Reader reader = paused[lane];
+                        paused[lane] = null;
+                        reader.request(1);
+                    }
+                }
+                if (reading == 0 && queues.stream().allMatch(ArrayDeque::isEmpty)) {
+                    sink.complete();
+                    break;
+                }
+            } while (missed);
+            emitting = false;
+        }
+
+        private synchronized void dispose() {
+            readers.forEach(Reader::dispose);
+        }
+
+        /**
+         * Choose the next lane by smooth weighted round robin among the lanes
+         * with emails waiting.
+         *
+         * @return Lane, -1 if all of them are empty
+         */
+        private int next() {
+            int best = -1;
+            int total = 0;
+            for (int i = 0; i < names.length; i++) {
+                if (queues.get(i).isEmpty() == false) {
+                    current[i] += weights[i];
+                    total += weights[i];
+                    if (best < 0 || current[i] > current[best]) {
+                        best = i;
+                    }
+                }
+            }
+            if (best >= 0) {
+                current[best] -= total;
+            }
+            return best;
+        }
+    }
+}
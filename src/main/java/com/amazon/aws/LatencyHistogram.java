@@ -0,0 +1,106 @@
+package com.amazon.aws;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with fixed size and bounded relative error, in the
+ * manner of HdrHistogram: values are grouped into buckets whose width doubles
+ * with each power of two, each power of two split into 128 buckets, so any
+ * value is reported within 1/128 (less than 1%) of itself. Minimum and maximum
+ * are kept exactly.
+ *
+ * Recording only increments counters (no locks, no allocation), so it is safe
+ * and cheap to record from several threads at the same time. Percentiles are
+ * computed from a copy of the counters taken when they are asked for.
+ */
+public class LatencyHistogram {
+    /**
+     * Bits of each value kept exactly.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /**
+     * Number of buckets each power of two is split into.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Highest value told apart, higher values are counted in the last bucket
+     * (2^40 nanoseconds are more than 18 minutes).
+     */
+    private static final long HIGHEST_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(getIndex(HIGHEST_VALUE) + 1);
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Record a value.
+     *
+     * @param value Value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long recorded = Math.max(value, 0);
+        counts.incrementAndGet(getIndex(Math.min(recorded, HIGHEST_VALUE)));
+        min.accumulateAndGet(recorded, Math::min);
+        max.accumulateAndGet(recorded, Math::max);
+    }
+
+    /**
+     * Get the given percentile of the values recorded, using the nearest rank
+     * method.
+     *
+     * @param percentile Percentile to get, between 0 and 100
+     * @return Highest value of the bucket of the percentile (bounded by the
+     *         minimum and maximum values), 0 if there are no values
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long lowest = min.get();
+        long highest = max.get();
+        long rank = Math.min(Math.max((long) Math.ceil(percentile / 100.0 * total), 1), total);
+        if (percentile <= 0) {
+            return lowest;
+        }
+        if (rank == total) {
+            return highest;
+        }
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.max(Math.min(getHighestValue(i), highest), lowest);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Get the bucket of a value.
+     */
+    private static int getIndex(long value) {
+        int shift = Math.max(63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS, 0);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Get the highest value counted in a bucket.
+     */
+    private static long getHighestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+
+import jakarta.mail.MessagingException;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Builds and serializes the emails as the other transports do, but discards
+ * them instead of sending them. It measures the client side ceiling of the tool
+ * (emails/second) without any network.
+ */
+public class LoopbackEmailTransport implements EmailTransport {
+    /**
+     * Name of the transport
+     */
+    public static final String NAME = "LOOPBACK";
+
+    private final SendEmailInfo sendEmailInfo;
+
+    /**
+     * Create a new transport.
+     *
+     * @param sendEmailInfo Information got from command line
+     */
+    public LoopbackEmailTransport(SendEmailInfo sendEmailInfo) {
+        this.sendEmailInfo = sendEmailInfo;
+    }
+
+    @Override
+    public Mono<?> send(String to, PhaseRecorder phases, long seq) {
+        try {
+            return send(to, render(to, phases, seq), phases, seq);
+        } catch (MessagingException | IOException e) {
+            return Mono.error(e);
+        }
+    }
+
+    @Override
+    public Object render(String to, PhaseRecorder phases, long seq) throws MessagingException, IOException {
+        return EmailUtils.createRawMessage(sendEmailInfo.getFrom(), to, sendEmailInfo.getSubject(),
+                sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases, seq);
+    }
+
+    @Override
+    public Mono<?> send(String to, Object rendered, PhaseRecorder phases, long seq) {
+        if (rendered instanceof byte[] == false) {
+            return send(to, phases, seq);
+        }
+        phases.mark(seq, PhaseRecorder.DISPATCHED);
+        phases.mark(seq, PhaseRecorder.RESPONDED);
+        return Mono.just(((byte[]) rendered).length);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Provider of {@link LoopbackEmailTransport}.
+     */
+    public static class Provider implements EmailTransportProvider {
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public EmailTransport create(SendEmailInfo sendEmailInfo) {
+            return new LoopbackEmailTransport(sendEmailInfo);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only index of the message ids given by Amazon Simple Email Service to
+ * the emails sent, with their recipient and send time, so notifications (e.g.
+ * bounces and complaints) can be correlated to the recipients without a
+ * database (see {@link NotificationCorrelator}).
+ *
+ * Records are appended into a memory-mapped file in chunks of 16 MB, a record
+ * never spans two chunks. Each record holds the message id length (2 bytes),
+ * the message id, the recipient length (2 bytes), the recipient and the send
+ * time (8 bytes, epoch milliseconds). A zero length marks the end of the
+ * records of a chunk, and so does a record that does not fit in its chunk
+ * (e.g. left half written by a crash): it is cleared when the index is opened
+ * to append, and the next record is written over it.
+ *
+ * Lookups by message id use an open addressing table held off-heap (16 bytes
+ * per slot: hash and record position plus one). It is built from the file on
+ * the first lookup, so sending emails does not pay for it. It is thread safe.
+ */
+public class MessageIdIndex implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdIndex.class);
+
+    private static final int CHUNK_BYTES = 16 << 20;
+    private static final int MAX_FIELD_BYTES = 0xffff;
+    private static final int SLOT_BYTES = 16;
+    private static final int SEGMENT_SLOTS = 1 << 26;
+    private static final long MIN_SLOTS = 1 << 10;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long position = 0;
+    private long count = 0;
+    private ByteBuffer[] table = null;
+    private long mask;
+
+    /**
+     * Sent email found in the index.
+     */
+    public static final class Entry {
+        private final String messageId;
+        private final String recipient;
+        private final long sentAt;
+
+        private Entry(String messageId, String recipient, long sentAt) {
+            this.messageId = messageId;
+            this.recipient = recipient;
+            this.sentAt = sentAt;
+        }
+
+        /**
+         * Get the message id.
+         *
+         * @return Message id
+         */
+        public String getMessageId() {
+            return messageId;
+        }
+
+        /**
+         * Get the recipient(s) the email was sent to.
+         *
+         * @return Address(es)
+         */
+        public String getRecipient() {
+            return recipient;
+        }
+
+        /**
+         * Get the time the email was sent.
+         *
+         * @return Time (epoch milliseconds)
+         */
+        public long getSentAt() {
+            return sentAt;
+        }
+    }
+
+    private MessageIdIndex(Path file, FileChannel channel, boolean readOnly) {
+        this.file = file;
+        this.channel = channel;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Open an index, creating it when it does not exist. New records are
+     * appended after the existing ones.
+     *
+     * @param file     Index file
+     * @param readOnly true to only look up message ids
+     * @return New object
+     * @throws IOException In case the file cannot be opened or mapped
+     */
+    public static MessageIdIndex open(Path file, boolean readOnly) throws IOException {
+        FileChannel channel = readOnly ? FileChannel.open(file, StandardOpenOption.READ)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        MessageIdIndex index = new MessageIdIndex(file, channel, readOnly);
+        try {
+            long size = channel.size();
+            for (long start = 0; start < size; start += CHUNK_BYTES) {
+                index.chunks.add(index.map(start, (int) Math.min(CHUNK_BYTES, size - start)));
+            }
+            index.scan();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return index;
+    }
+
+    /**
+     * Record a sent email.
+     *
+     * @param messageId Message id given to the email
+     * @param recipient Recipient(s) of the email
+     * @param sentAt    Time the email was sent (epoch milliseconds)
+     * @throws IOException In case the file cannot be extended
+     */
+    public synchronized void record(String messageId, String recipient, long sentAt) throws IOException {
+        byte[] id = messageId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = recipient.getBytes(StandardCharsets.UTF_8);
+        if (id.length == 0 || id.length > MAX_FIELD_BYTES) {
+            return;
+        }
+        if (to.length > MAX_FIELD_BYTES) {
+            to = Arrays.copyOf(to, MAX_FIELD_BYTES);
+        }
+        if (table != null && (count + 1) * 2 > mask + 1) {
+            // Before moving to the next chunk, as scanning sets the position
+            allocateTable((mask + 1) * 2);
+            scan();
+        }
+        int length = 2 + id.length + 2 + to.length + 8;
+        long chunkEnd = (position / CHUNK_BYTES + 1) * CHUNK_BYTES;
+        if (position + length > chunkEnd) {
+            // Remaining bytes of the chunk are zeros, that is the end mark
+            position = chunkEnd;
+        }
+        int chunk = (int) (position / CHUNK_BYTES);
+        if (chunk == chunks.size() - 1 && chunks.get(chunk).capacity() < CHUNK_BYTES) {
+            // Last chunk of a file opened, map it whole to append
+            chunks.set(chunk, map((long) chunk * CHUNK_BYTES, CHUNK_BYTES));
+        } else if (chunk == chunks.size()) {
+            chunks.add(map((long) chunk * CHUNK_BYTES, CHUNK_BYTES));
+        }
+        ByteBuffer buffer = chunks.get(chunk).duplicate();
+        buffer.position((int) (position % CHUNK_BYTES));
+        buffer.putShort((short) id.length).put(id).putShort((short) to.length).put(to).putLong(sentAt);
+        if (table != null) {
+            insert(OffHeapAddressSet.hash(id), position);
+        }
+        position += length;
+        count++;
+    }
+
+    /**
+     * Look up a message id.
+     *
+     * @param messageId Message id given to the email
+     * @return Email sent, null if it is not in the index
+     */
+    public synchronized Entry lookup(String messageId) {
+        if (table == null) {
+            buildTable();
+        }
+        byte[] id = messageId.getBytes(StandardCharsets.UTF_8);
+        long hash = OffHeapAddressSet.hash(id);
+        for (long slot = hash & mask;; slot = (slot + 1) & mask) {
+            long offset = getSlotOffset(slot);
+            if (offset == 0) {
+                return null;
+            }
+            if (getSlotHash(slot) == hash) {
+                Entry entry = read(offset - 1);
+                if (entry.messageId.equals(messageId)) {
+                    return entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of records of the index.
+     *
+     * @return Records
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Close the index. The file is truncated to its records when the platform
+     * allows it.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (readOnly == false) {
+                for (MappedByteBuffer chunk : chunks) {
+                    chunk.force();
+                }
+                try {
+                    channel.truncate(position);
+                } catch (IOException e) {
+                    // Mapped files cannot be truncated in some platforms, zeros mark the end
+                    logger.debug("Index {} not truncated: {}", file, e.getMessage());
+                }
+            }
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing index", e);
+        }
+    }
+
+    private MappedByteBuffer map(long start, int size) throws IOException {
+        return channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, start, size);
+    }
+
+    /**
+     * Read all the records, counting them and leaving the position after the
+     * last one. Records are inserted into the lookup table, if any.
+     */
+    private void scan() {
+        position = 0;
+        count = 0;
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            ByteBuffer buffer = chunks.get(chunk).duplicate();
+            while (buffer.remaining() >= 2) {
+                int start = buffer.position();
+                int idLength = buffer.getShort() & MAX_FIELD_BYTES;
+                if (idLength == 0) {
+                    break;
+                }
+                if (buffer.remaining() < idLength + 2) {
+                    truncated(buffer, chunk, start);
+                    break;
+                }
+                byte[] id = new byte[idLength];
+                buffer.get(id);
+                int toLength = buffer.getShort() & MAX_FIELD_BYTES;
+                if (buffer.remaining() < toLength + 8) {
+                    truncated(buffer, chunk, start);
+                    break;
+                }
+                buffer.position(buffer.position() + toLength + 8);
+                long offset = (long) chunk * CHUNK_BYTES + start;
+                if (table != null) {
+                    insert(OffHeapAddressSet.hash(id), offset);
+                }
+                position = offset + buffer.position() - start;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Handle a record that does not fit in its chunk, taken as the end of the
+     * records of the chunk. Its bytes are cleared when appending, so what is
+     * left of it after the next record is not read as another record.
+     */
+    private void truncated(ByteBuffer buffer, int chunk, int start) {
+        if (table == null) {
+            logger.warn("Index {}: incomplete record at {} ignored", file, (long) chunk * CHUNK_BYTES + start);
+        }
+        if (readOnly == false) {
+            for (int i = start; i < buffer.limit(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private Entry read(long offset) {
+        ByteBuffer buffer = chunks.get((int) (offset / CHUNK_BYTES)).duplicate();
+        buffer.position((int) (offset % CHUNK_BYTES));
+        byte[] id = new byte[buffer.getShort() & MAX_FIELD_BYTES];
+        buffer.get(id);
+        byte[] to = new byte[buffer.getShort() & MAX_FIELD_BYTES];
+        buffer.get(to);
+        return new Entry(new String(id, StandardCharsets.UTF_8), new String(to, StandardCharsets.UTF_8),
+                buffer.getLong());
+    }
+
+    private void buildTable() {
+        long slots = MIN_SLOTS;
+        while (slots < count * 2) {
+            slots <<= 1;
+        }
+        allocateTable(slots);
+        scan();
+    }
+
+    private void allocateTable(long slots) {
+        table = new ByteBuffer[(int) ((slots + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS)];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = ByteBuffer.allocateDirect((int) Math.min(slots, SEGMENT_SLOTS) * SLOT_BYTES);
+        }
+        mask = slots - 1;
+    }
+
+    private void insert(long hash, long offset) {
+        long slot = hash & mask;
+        while (getSlotOffset(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        ByteBuffer segment = table[(int) (slot / SEGMENT_SLOTS)];
+        int index = (int) (slot % SEGMENT_SLOTS) * SLOT_BYTES;
+        segment.putLong(index, hash);
+        segment.putLong(index + 8, offset + 1);
+    }
+
+    private long getSlotHash(long slot) {
+        return table[(int) (slot / SEGMENT_SLOTS)].getLong((int) (slot % SEGMENT_SLOTS) * SLOT_BYTES);
+    }
+
+    private long getSlotOffset(long slot) {
+        return table[(int) (slot / SEGMENT_SLOTS)].getLong((int) (slot % SEGMENT_SLOTS) * SLOT_BYTES + 8);
+    }
+}
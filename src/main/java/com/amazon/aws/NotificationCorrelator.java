@@ -0,0 +1,206 @@
+package com.amazon.aws;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Correlate the notifications of Amazon Simple Email Service (bounces,
+ * complaints, deliveries...) with the recipients of the emails sent, using the
+ * index of message ids written while sending (see {@link MessageIdIndex}).
+ *
+ * Notifications are read from local files with one or more JSON documents
+ * (e.g. one per line, or an array): either the notification itself or the
+ * Amazon SNS message wrapping it. Each notification is written as one CSV line:
+ * message id, notification type, detail (bounce type or complaint feedback
+ * type), recipient the email was sent to, time it was sent and recipients
+ * notified.
+ */
+public class NotificationCorrelator {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCorrelator.class);
+
+    private static final String HEADER = "messageId,type,detail,recipient,sentAt,notifiedRecipients";
+
+    private final MessageIdIndex index;
+    private final Writer output;
+    private final Map<String, Integer> types = new TreeMap<>();
+    private int notifications = 0;
+    private int correlated = 0;
+
+    /**
+     * Create a new correlator.
+     *
+     * @param index  Index of the message ids of the emails sent
+     * @param output Where the correlated notifications are written
+     */
+    public NotificationCorrelator(MessageIdIndex index, Writer output) {
+        this.index = index;
+        this.output = output;
+    }
+
+    /**
+     * <code>correlate</code> subcommand: read the notification files and write
+     * the correlated notifications.
+     *
+     * @param args Subcommand arguments: index file and notification files (or
+     *             directories with them)
+     * @return Exit code: 0 when all notifications have been read, 1 in case of
+     *         error
+     */
+    public static int run(String[] args) {
+        Options options = new Options();
+        Option outputOption = Option.builder("o").longOpt("output").argName("file").hasArg().required(false)
+                .desc("CSV file to write the correlated notifications. Default to the standard output.").build();
+        options.addOption(outputOption);
+
+        CommandLineParser parser = new DefaultParser();
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine commandLine;
+        try {
+            commandLine = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            formatter.printHelp("send-email correlate <message index> <notification files...>", options);
+            return 1;
+        }
+        if (commandLine.getArgList().size() < 2) {
+            System.out.println("Message index and notification files are required.");
+            formatter.printHelp("send-email correlate <message index> <notification files...>", options);
+            return 1;
+        }
+
+        String outputFile = commandLine.getOptionValue("output");
+        try (MessageIdIndex index = MessageIdIndex.open(Paths.get(commandLine.getArgList().get(0)), true);
+                Writer output = outputFile != null
+                        ? Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)
+                        : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            logger.info("Message index loaded: {} emails", index.size());
+            NotificationCorrelator correlator = new NotificationCorrelator(index, output);
+            output.write(HEADER + "\n");
+            for (String name : commandLine.getArgList().subList(1, commandLine.getArgList().size())) {
+                for (Path file : listFiles(Paths.get(name))) {
+                    correlator.correlate(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                }
+            }
+            output.flush();
+            logger.info("Notifications: {}, correlated: {}, not found: {}.", correlator.notifications,
+                    correlator.correlated, correlator.notifications - correlator.correlated);
+            logger.info("Notification types: {}.", correlator.types);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            logger.error("Error correlating notifications", e);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Correlate the notifications of the given content.
+     *
+     * @param content One or more JSON documents
+     * @throws IOException              In case the output cannot be written
+     * @throws IllegalArgumentException In case the content is not valid JSON
+     */
+    public void correlate(String content) throws IOException, IllegalArgumentException {
+        JsonReader reader = new JsonReader(content);
+        while (reader.hasNext()) {
+            Object document = reader.next();
+            if (document instanceof List) {
+                for (Object notification : (List<?>) document) {
+                    correlateNotification(notification);
+                }
+            } else {
+                correlateNotification(document);
+            }
+        }
+    }
+
+    private void correlateNotification(Object notification) throws IOException {
+        // Amazon SNS wraps the notification as a string
+        Object message = JsonReader.get(notification, "Message");
+        if (message instanceof String && "Notification".equals(JsonReader.get(notification, "Type"))) {
+            notification = new JsonReader((String) message).next();
+        }
+        String type = stringOf(JsonReader.get(notification, "notificationType"));
+        if (type.isEmpty()) {
+            // Event publishing
+            type = stringOf(JsonReader.get(notification, "eventType"));
+        }
+        String messageId = stringOf(JsonReader.get(notification, "mail", "messageId"));
+        String detail = "";
+        List<String> notified = new ArrayList<>();
+        Object bounce = JsonReader.get(notification, "bounce");
+        Object complaint = JsonReader.get(notification, "complaint");
+        if (bounce != null) {
+            detail = stringOf(JsonReader.get(bounce, "bounceType")) + "/"
+                    + stringOf(JsonReader.get(bounce, "bounceSubType"));
+            addAddresses(JsonReader.get(bounce, "bouncedRecipients"), notified);
+        } else if (complaint != null) {
+            detail = stringOf(JsonReader.get(complaint, "complaintFeedbackType"));
+            addAddresses(JsonReader.get(complaint, "complainedRecipients"), notified);
+        } else {
+            addAddresses(JsonReader.get(notification, "delivery", "recipients"), notified);
+        }
+
+        notifications++;
+        types.merge(type.isEmpty() ? "Unknown" : type, 1, Integer::sum);
+        MessageIdIndex.Entry entry = messageId.isEmpty() ? null : index.lookup(messageId);
+        String recipient = "";
+        String sentAt = "";
+        if (entry != null) {
+            correlated++;
+            recipient = entry.getRecipient();
+            sentAt = Instant.ofEpochMilli(entry.getSentAt()).toString();
+        }
+        output.write(Stream.of(messageId, type, detail, recipient, sentAt, String.join(";", notified))
+                .map(RunReport::escapeCsv).collect(Collectors.joining(",")) + "\n");
+    }
+
+    private static void addAddresses(Object recipients, List<String> addresses) {
+        if (recipients instanceof List == false) {
+            return;
+        }
+        for (Object recipient : (List<?>) recipients) {
+            // Bounces and complaints have objects, deliveries have addresses
+            Object address = recipient instanceof Map ? JsonReader.get(recipient, "emailAddress") : recipient;
+            if (address != null) {
+                addresses.add(address.toString());
+            }
+        }
+    }
+
+    private static String stringOf(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static List<Path> listFiles(Path path) throws IOException {
+        if (Files.isDirectory(path) == false) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.amazon.aws;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exact set of email addresses stored off-heap (direct buffers), so tens of
+ * millions of addresses can be held without heap pressure nor garbage
+ * collection cost.
+ *
+ * Addresses are hashed with a 64-bit hash into open addressing tables that
+ * keep the hash and the position of the address bytes in an arena. Equal hashes
+ * are confirmed by comparing the bytes, so there are no false positives. The set
+ * is split into segments to keep each buffer under the 2GB limit.
+ *
+ * Addresses are compared as given, callers are expected to normalize them
+ * (see {@link RecipientFilter#normalize(String)}).
+ */
+public class OffHeapAddressSet {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int SLOT_BYTES = 16;
+    private static final int MIN_SLOTS = 1 << 10;
+    private static final int MAX_SLOTS = (Integer.MAX_VALUE / SLOT_BYTES + 1) / 2;
+    private static final int MIN_ARENA_BYTES = 1 << 14;
+    private static final int EXPECTED_ADDRESS_BYTES = 24;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Create a new set.
+     *
+     * @param expectedSize Expected number of addresses. It is just a hint to
+     *                     avoid resizing, the set grows when needed.
+     */
+    public OffHeapAddressSet(long expectedSize) {
+        long perSegment = Math.max(expectedSize / SEGMENTS, 1);
+        int slots = (int) Math.min(Math.max(Long.highestOneBit(perSegment * 2 - 1) << 1, MIN_SLOTS), MAX_SLOTS);
+        int arenaBytes = (int) Math.min(Math.max(perSegment * EXPECTED_ADDRESS_BYTES, MIN_ARENA_BYTES),
+                Integer.MAX_VALUE);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(slots, arenaBytes);
+        }
+    }
+
+    /**
+     * Add an address to the set.
+     *
+     * @param address Address to add
+     * @return true if the address was not in the set
+     */
+    public boolean add(String address) {
+        byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        return segmentOf(hash).add(hash, bytes);
+    }
+
+    /**
+     * Check if an address is in the set.
+     *
+     * @param address Address to check
+     * @return true if the address is in the set
+     */
+    public boolean contains(String address) {
+        byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        return segmentOf(hash).contains(hash, bytes);
+    }
+
+    /**
+     * Get the number of addresses in the set.
+     *
+     * @return Number of addresses
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * 64-bit hash of the given bytes: FNV-1a followed by a finalizer mix to
+     * spread the bits.
+     *
+     * @param bytes Bytes to hash
+     * @return Hash
+     */
+    static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Open addressing table (linear probing) with its arena. Each slot keeps the
+     * hash and the arena position plus one (0 means an empty slot). Each arena
+     * entry keeps the length (2 bytes) and the address bytes.
+     */
+    private static final class Segment {
+        private ByteBuffer table;
+        private int mask;
+        private int size = 0;
+        private ByteBuffer arena;
+
+        Segment(int slots, int arenaBytes) {
+            this.table = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+            this.mask = slots - 1;
+            this.arena = ByteBuffer.allocateDirect(arenaBytes);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized boolean contains(long hash, byte[] bytes) {
+            return find(hash, bytes) < 0;
+        }
+
+        synchronized boolean add(long hash, byte[] bytes) {
+            int slot = find(hash, bytes);
+            if (slot < 0) {
+                return false;
+            }
+            if (bytes.length > 0xffff) {
+                throw new IllegalArgumentException("Address too long");
+            }
+            // Keep empty slots so probing always ends
+            if (size >= mask + 1 - (mask + 1) / 8) {
+                throw new IllegalStateException("Address set segment is full");
+            }
+            int position = append(bytes);
+            table.putLong(slot * SLOT_BYTES, hash);
+            table.putLong(slot * SLOT_BYTES + 8, position + 1L);
+            size++;
+            if (size > (mask + 1) / 2 && mask + 1 < MAX_SLOTS) {
+                resize();
+            }
+            return true;
+        }
+
+        /**
+         * Find the slot of the given address.
+         *
+         * @return Negative value if the address is in the table, otherwise the
+         *         empty slot where it must be added
+         */
+        private int find(long hash, byte[] bytes) {
+            int slot = (int) hash & mask;
+            while (true) {
+                long position = table.getLong(slot * SLOT_BYTES + 8);
+                if (position == 0) {
+                    return slot;
+                }
+                if (table.getLong(slot * SLOT_BYTES) == hash && equalsArena((int) (position - 1), bytes)) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private boolean equalsArena(int position, byte[] bytes) {
+            int length = arena.getShort(position) & 0xffff;
+            if (length != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (arena.get(position + 2 + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int append(byte[] bytes) {
+            int required = arena.position() + 2 + bytes.length;
+            if (required > arena.capacity()) {
+                long capacity = Math.max((long) arena.capacity() * 2, required);
+                if (capacity > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Address set segment is full");
+                }
+                ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+                arena.flip();
+                grown.put(arena);
+                arena = grown;
+            }
+            int position = arena.position();
+            arena.putShort((short) bytes.length);
+            arena.put(bytes);
+            return position;
+        }
+
+        private void resize() {
+            int slots = (mask + 1) * 2;
+            ByteBuffer old = table;
+            int oldSlots = mask + 1;
+            table = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+            mask = slots - 1;
+            for (int i = 0; i < oldSlots; i++) {
+                long position = old.getLong(i * SLOT_BYTES + 8);
+                if (position != 0) {
+                    long hash = old.getLong(i * SLOT_BYTES);
+                    int slot = (int) hash & mask;
+                    while (table.getLong(slot * SLOT_BYTES + 8) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table.putLong(slot * SLOT_BYTES, hash);
+                    table.putLong(slot * SLOT_BYTES + 8, position);
+                }
+            }
+        }
+    }
+}
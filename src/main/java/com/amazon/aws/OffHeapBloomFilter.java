@@ -0,0 +1,100 @@
+package com.amazon.aws;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter of email addresses stored off-heap (direct buffers). It takes
+ * around 10 bits per address for a 1% false positive rate, so it is used
+ * instead of {@link OffHeapAddressSet} for suppression lists too big to be
+ * held exactly.
+ *
+ * There are no false negatives: an address added is always found. An address
+ * not added may be found with the given false positive rate.
+ */
+public class OffHeapBloomFilter {
+    private static final int BUFFER_BITS = 1 << 30;
+    private static final double LN2 = Math.log(2);
+
+    private final ByteBuffer[] buffers;
+    private final long bits;
+    private final int hashes;
+
+    /**
+     * Create a new filter.
+     *
+     * @param expectedSize      Expected number of addresses
+     * @param falsePositiveRate Accepted false positive rate, e.g. 0.01
+     */
+    public OffHeapBloomFilter(long expectedSize, double falsePositiveRate) {
+        long n = Math.max(expectedSize, 1);
+        double p = Math.min(Math.max(falsePositiveRate, Double.MIN_NORMAL), 0.5);
+        long m = Math.max((long) Math.ceil(-n * Math.log(p) / (LN2 * LN2)), Long.SIZE);
+        this.bits = (m + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+        this.hashes = Math.max((int) Math.round((double) bits / n * LN2), 1);
+        int count = (int) ((bits + BUFFER_BITS - 1) / BUFFER_BITS);
+        this.buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long size = Math.min(bits - (long) i * BUFFER_BITS, BUFFER_BITS);
+            buffers[i] = ByteBuffer.allocateDirect((int) (size / Byte.SIZE));
+        }
+    }
+
+    /**
+     * Add an address to the filter.
+     *
+     * @param address Address to add
+     */
+    public synchronized void put(String address) {
+        long hash = OffHeapAddressSet.hash(address.getBytes(StandardCharsets.UTF_8));
+        long h1 = hash;
+        long h2 = hash >>> 32 | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            ByteBuffer buffer = buffers[(int) (bit / BUFFER_BITS)];
+            int index = (int) (bit % BUFFER_BITS);
+            int position = index >>> 3;
+            buffer.put(position, (byte) (buffer.get(position) | 1 << (index & 7)));
+        }
+    }
+
+    /**
+     * Check if an address might have been added to the filter.
+     *
+     * @param address Address to check
+     * @return false if the address has not been added, true if it has probably
+     *         been added
+     */
+    public synchronized boolean mightContain(String address) {
+        long hash = OffHeapAddressSet.hash(address.getBytes(StandardCharsets.UTF_8));
+        long h1 = hash;
+        long h2 = hash >>> 32 | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            ByteBuffer buffer = buffers[(int) (bit / BUFFER_BITS)];
+            int index = (int) (bit % BUFFER_BITS);
+            if ((buffer.get(index >>> 3) & 1 << (index & 7)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the size of the filter.
+     *
+     * @return Number of bits
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * Get the number of hash functions used for each address.
+     *
+     * @return Number of hashes
+     */
+    public int getHashes() {
+        return hashes;
+    }
+}
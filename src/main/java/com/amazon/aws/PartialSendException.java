@@ -0,0 +1,62 @@
+package com.amazon.aws;
+
+import java.util.List;
+
+/**
+ * Email sent at once to several recipients that has been accepted for some of
+ * them only, e.g. an SMTP transaction where the server rejected some
+ * <code>RCPT TO</code> (see {@link SmtpEmailTransport#sendBatch(List, Object, PhaseRecorder, long)}).
+ *
+ * Recipients sent count as emails sent and the rest as failed, with the cause
+ * of this exception as their error.
+ */
+public class PartialSendException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object response;
+    private final List<String> sent;
+    private final List<String> failed;
+
+    /**
+     * Create a new exception.
+     *
+     * @param response Response of the transport for the recipients sent, it can
+     *                 be null
+     * @param sent     Recipients the email has been sent to
+     * @param failed   Recipients the email has not been sent to
+     * @param cause    Error got for the recipients not sent
+     */
+    public PartialSendException(Object response, List<String> sent, List<String> failed, Throwable cause) {
+        super(String.format("Email sent to %d of %d recipients", sent.size(), sent.size() + failed.size()), cause);
+        this.response = response;
+        this.sent = sent;
+        this.failed = failed;
+    }
+
+    /**
+     * Get the response of the transport for the recipients sent.
+     *
+     * @return Response, e.g. the message id, null if there is none
+     */
+    public Object getResponse() {
+        return response;
+    }
+
+    /**
+     * Get the recipients the email has been sent to.
+     *
+     * @return Recipients sent
+     */
+    public List<String> getSent() {
+        return sent;
+    }
+
+    /**
+     * Get the recipients the email has not been sent to.
+     *
+     * @return Recipients failed
+     */
+    public List<String> getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,220 @@
+package com.amazon.aws;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the timestamps of the lifecycle of each email sent (see
+ * {@link SendPhase}) into a preallocated ring buffer, so recording does not
+ * allocate nor lock.
+ *
+ * Each email gets a sequence number by calling {@link #start()} and then its
+ * timestamps are recorded by calling {@link #mark(long, int)}. When more emails
+ * than the capacity are recorded, the oldest ones are overwritten, so phase
+ * durations are aggregated over the most recent emails.
+ *
+ * The time waiting for a connection of the HTTP client pool is only recorded
+ * for one of every {@link #CONNECTION_SAMPLING} emails (see
+ * {@link #isConnectionWaitSampled(long)}), as getting it costs collecting the
+ * SDK metrics of the request.
+ */
+public class PhaseRecorder {
+    /**
+     * Email emitted by the pipeline source
+     */
+    public static final int ENQUEUED = 1;
+    /**
+     * Worker started with the email
+     */
+    public static final int STARTED = 2;
+    /**
+     * MIME message built
+     */
+    public static final int BUILT = 3;
+    /**
+     * MIME message serialized
+     */
+    public static final int SERIALIZED = 4;
+    /**
+     * Send stage started with the rendered email (only when emails are
+     * rendered apart, see {@link SendPipeline})
+     */
+    public static final int SEND_STARTED = 5;
+    /**
+     * Email handed to the transport
+     */
+    public static final int DISPATCHED = 6;
+    /**
+     * Response received
+     */
+    public static final int RESPONDED = 7;
+
+    /**
+     * Maximum number of emails recorded before overwriting the oldest ones
+     */
+    public static final int MAX_CAPACITY = 1 << 16;
+
+    /**
+     * One of every this number of emails records its connection wait, it is a
+     * power of two
+     */
+    public static final int CONNECTION_SAMPLING = 16;
+
+    /**
+     * Recorder that records nothing
+     */
+    public static final PhaseRecorder DISABLED = new PhaseRecorder(0);
+
+    private static final int SEQUENCE = 0;
+    private static final int CONNECTION_WAIT = 8;
+    private static final int STRIDE = 9;
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final int mask;
+    private final AtomicLongArray records;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Create a new recorder.
+     *
+     * @param expectedEmails Expected number of emails to be sent. Capacity is
+     *                       rounded up to a power of two and limited to
+     *                       {@link #MAX_CAPACITY}. When it is 0, nothing is
+     *                       recorded.
+     */
+    public PhaseRecorder(int expectedEmails) {
+        int capacity = 0;
+        if (expectedEmails > 0) {
+            capacity = Math.min(Integer.highestOneBit(Math.max(expectedEmails - 1, 1)) << 1, MAX_CAPACITY);
+        }
+        this.mask = capacity - 1;
+        this.records = new AtomicLongArray(capacity * STRIDE);
+    }
+
+    /**
+     * Check if this recorder records anything.
+     *
+     * @return true if emails are recorded
+     */
+    public boolean isEnabled() {
+        return mask >= 0;
+    }
+
+    /**
+     * Start recording a new email, marking it as {@link #ENQUEUED}.
+     *
+     * @return Sequence number of the email, used to record its next timestamps
+     */
+    public long start() {
+        long seq = sequence.getAndIncrement();
+        if (isEnabled()) {
+            int base = (int) (seq & mask) * STRIDE;
+            records.set(base + SEQUENCE, UNSET);
+            for (int mark = ENQUEUED; mark <= RESPONDED; mark++) {
+                records.lazySet(base + mark, UNSET);
+            }
+            records.lazySet(base + CONNECTION_WAIT, UNSET);
+            records.lazySet(base + ENQUEUED, System.nanoTime());
+            records.set(base + SEQUENCE, seq);
+        }
+        return seq;
+    }
+
+    /**
+     * Record the current time for the given mark of an email.
+     *
+     * @param seq  Sequence number of the email @see {@link #start()}
+     * @param mark Mark to record, e.g. {@link #BUILT}
+     */
+    public void mark(long seq, int mark) {
+        if (isEnabled()) {
+            int base = (int) (seq & mask) * STRIDE;
+            if (records.get(base + SEQUENCE) == seq) {
+                records.lazySet(base + mark, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Check if the time an email waits for a connection has to be recorded.
+     *
+     * @param seq Sequence number of the email @see {@link #start()}
+     * @return true for one of every {@link #CONNECTION_SAMPLING} emails, when
+     *         recording
+     */
+    public boolean isConnectionWaitSampled(long seq) {
+        return isEnabled() && (seq & (CONNECTION_SAMPLING - 1)) == 0;
+    }
+
+    /**
+     * Record the time an email waited for a connection of the HTTP client pool.
+     *
+     * @param seq        Sequence number of the email @see {@link #start()}
+     * @param waitNanos  Time waited in nanoseconds
+     */
+    public void recordConnectionWait(long seq, long waitNanos) {
+        if (isEnabled()) {
+            int base = (int) (seq & mask) * STRIDE;
+            if (records.get(base + SEQUENCE) == seq) {
+                records.set(base + CONNECTION_WAIT, waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Aggregate the durations of each phase of the emails recorded. Emails
+     * without response (failed or still in flight) are not included, and
+     * {@link SendPhase#CONNECTION} only includes the emails sampled (for the
+     * rest the wait is part of {@link SendPhase#RESPONSE}).
+     *
+     * @return Sorted durations (in nanoseconds) for each phase
+     */
+    public Map<SendPhase, long[]> getDurations() {
+        int recorded = isEnabled() ? (int) Math.min(sequence.get(), mask + 1L) : 0;
+        Map<SendPhase, long[]> durations = new EnumMap<>(SendPhase.class);
+        for (SendPhase phase : SendPhase.values()) {
+            durations.put(phase, new long[recorded]);
+        }
+        int complete = 0;
+        int sampled = 0;
+        for (int slot = 0; slot < recorded; slot++) {
+            int base = slot * STRIDE;
+            if (records.get(base + SEQUENCE) == UNSET || records.get(base + RESPONDED) == UNSET) {
+                continue;
+            }
+            long enqueued = records.get(base + ENQUEUED);
+            long started = orElse(records.get(base + STARTED), enqueued);
+            long built = orElse(records.get(base + BUILT), started);
+            long serialized = orElse(records.get(base + SERIALIZED), built);
+            long sendStarted = orElse(records.get(base + SEND_STARTED), serialized);
+            long dispatched = orElse(records.get(base + DISPATCHED), sendStarted);
+            long responded = records.get(base + RESPONDED);
+            long connectionWait = 0;
+            if (records.get(base + CONNECTION_WAIT) != UNSET) {
+                connectionWait = Math.min(records.get(base + CONNECTION_WAIT), responded - dispatched);
+                durations.get(SendPhase.CONNECTION)[sampled++] = connectionWait;
+            }
+            durations.get(SendPhase.QUEUE)[complete] = started - enqueued;
+            durations.get(SendPhase.BUILD)[complete] = built - started;
+            durations.get(SendPhase.SERIALIZE)[complete] = serialized - built;
+            durations.get(SendPhase.BUFFER)[complete] = sendStarted - serialized;
+            durations.get(SendPhase.DISPATCH)[complete] = dispatched - sendStarted;
+            durations.get(SendPhase.RESPONSE)[complete] = responded - dispatched - connectionWait;
+            complete++;
+        }
+        for (SendPhase phase : SendPhase.values()) {
+            long[] phaseDurations = Arrays.copyOf(durations.get(phase),
+                    phase == SendPhase.CONNECTION ? sampled : complete);
+            Arrays.sort(phaseDurations);
+            durations.put(phase, phaseDurations);
+        }
+        return durations;
+    }
+
+    private static long orElse(long value, long defaultValue) {
+        return value == UNSET ? defaultValue : value;
+    }
+}
@@ -1,9 +1,14 @@
 package com.amazon.aws;
 
 /**
- * Protocols supported by the class {@link EmailUtils}
+ * Protocols supported by the class {@link EmailUtils}. Other transports can be
+ * plugged in by name @see {@link EmailTransportProvider}.
  */
 public enum ProtocolEnum {
     SMTP,
-    API
+    API,
+    /**
+     * Both SMTP and API at the same time @see {@link ProtocolRouter}
+     */
+    MIXED
 }
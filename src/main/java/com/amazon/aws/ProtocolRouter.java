@@ -0,0 +1,164 @@
+package com.amazon.aws;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends each email with either the API or the SMTP protocol, so a single
+ * workload uses both channels at the same time (see {@link ProtocolEnum#MIXED}).
+ *
+ * Emails are distributed either with a fixed ratio or dynamically. With a fixed
+ * ratio the protocols are interleaved evenly. Dynamically each email is sent
+ * with the protocol expected to finish it first: the average latency of the
+ * protocol times its emails in flight (plus the new one), so the faster
+ * protocol gets more emails. Failed emails count as slow ones, so a failing
+ * protocol gets fewer emails.
+ *
+ * The emails of each protocol are recorded into the statistics of the protocol
+ * (see {@link SendStatistics#getProtocolStatistics(ProtocolEnum)}).
+ *
+ * Each email is routed when it is sent, so emails are neither rendered ahead
+ * nor sent in batches: both depend on the protocol of the email.
+ */
+public class ProtocolRouter implements SendPipeline.Sender {
+    /**
+     * Ratio to distribute the emails dynamically
+     */
+    public static final double DYNAMIC = -1;
+
+    /**
+     * Weight of each latency in the average latency of a protocol.
+     */
+    private static final double LATENCY_WEIGHT = 0.1;
+
+    private final Map<ProtocolEnum, Channel> channels = new EnumMap<>(ProtocolEnum.class);
+    private final double apiRatio;
+    private final SendStatistics stats;
+    private long emails = 0;
+    private long apiEmails = 0;
+
+    /**
+     * Create a new router.
+     *
+     * @param api      Sends one email with the API
+     * @param smtp     Sends one email with SMTP
+     * @param apiRatio Ratio of emails sent with the API (between 0 and 1), or
+     *                 {@link #DYNAMIC}
+     * @param stats    Statistics to record the emails of each protocol into
+     */
+    public ProtocolRouter(SendPipeline.Sender api, SendPipeline.Sender smtp, double apiRatio,
+            SendStatistics stats) {
+        this.channels.put(ProtocolEnum.API, new Channel(api));
+        this.channels.put(ProtocolEnum.SMTP, new Channel(smtp));
+        this.apiRatio = apiRatio;
+        this.stats = stats;
+    }
+
+    @Override
+    public Mono<?> send(String to, long seq) {
+        return Mono.defer(() -> {
+            ProtocolEnum protocol = choose();
+            Channel channel = channels.get(protocol);
+            SendStatistics protocolStats = stats.getProtocolStatistics(protocol);
+            AtomicBoolean done = new AtomicBoolean(false);
+            long start = System.nanoTime();
+            return channel.sender.send(to, seq).doOnSuccess(response -> {
+                if (done.compareAndSet(false, true)) {
+                    long latency = System.nanoTime() - start;
+                    protocolStats.recordSuccess(latency);
+                    finished(channel, latency, false);
+                }
+            }).doOnError(e -> {
+                if (done.compareAndSet(false, true)) {
+                    protocolStats.recordError(e);
+                    finished(channel, System.nanoTime() - start, true);
+                }
+            }).doOnCancel(() -> {
+                if (done.compareAndSet(false, true)) {
+                    cancelled(channel);
+                }
+            });
+        });
+    }
+
+    /**
+     * Choose the protocol of the next email and count it as in flight.
+     *
+     * @return Protocol
+     */
+    private synchronized ProtocolEnum choose() {
+        ProtocolEnum protocol;
+        if (apiRatio == DYNAMIC) {
+            protocol = getFastest();
+        } else {
+            emails++;
+            protocol = apiEmails < apiRatio * emails ? ProtocolEnum.API : ProtocolEnum.SMTP;
+        }
+        if (protocol == ProtocolEnum.API) {
+            apiEmails++;
+        }
+        channels.get(protocol).inFlight++;
+        return protocol;
+    }
+
+    /**
+     * Get the protocol expected to finish a new email first. Protocols without
+     * latency yet are expected to be as fast as the fastest known one.
+     *
+     * @return Protocol
+     */
+    private ProtocolEnum getFastest() {
+        double knownLatency = Double.MAX_VALUE;
+        for (Channel channel : channels.values()) {
+            if (channel.latency > 0) {
+                knownLatency = Math.min(knownLatency, channel.latency);
+            }
+        }
+        if (knownLatency == Double.MAX_VALUE) {
+            knownLatency = 1;
+        }
+        ProtocolEnum fastest = null;
+        double fastestCost = Double.MAX_VALUE;
+        for (Map.Entry<ProtocolEnum, Channel> entry : channels.entrySet()) {
+            Channel channel = entry.getValue();
+            double latency = channel.latency > 0 ? channel.latency : knownLatency;
+            double cost = latency * (channel.inFlight + 1);
+            if (cost < fastestCost) {
+                fastest = entry.getKey();
+                fastestCost = cost;
+            }
+        }
+        return fastest;
+    }
+
+    private synchronized void finished(Channel channel, long latencyNanos, boolean failed) {
+        channel.inFlight--;
+        double latency = failed ? 2 * Math.max(channel.latency, latencyNanos) : latencyNanos;
+        channel.latency = channel.latency > 0 ? channel.latency + (latency - channel.latency) * LATENCY_WEIGHT
+                : latency;
+    }
+
+    /**
+     * Count an email cancelled before it finished (e.g. abandoned on shutdown)
+     * as no longer in flight, without its latency.
+     */
+    private synchronized void cancelled(Channel channel) {
+        channel.inFlight--;
+    }
+
+    /**
+     * Sender of a protocol and its state.
+     */
+    private static final class Channel {
+        private final SendPipeline.Sender sender;
+        private int inFlight = 0;
+        private double latency = 0;
+
+        Channel(SendPipeline.Sender sender) {
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.amazon.aws;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recipient of one email with its attributes.
+ *
+ * In a recipients file each line holds the address followed by optional
+ * attributes separated by semicolons, e.g.
+ * <code>Name &lt;name@email.com&gt;;send-at=2026-10-19T10:00:00Z;lane=bulk</code>.
+ * Supported attributes:
+ * <ul>
+ * <li><code>send-at</code>: time to send the email (see
+ * {@link #parseTime(String, long)}).</li>
+ * <li><code>lane</code>: priority lane of the email (see
+ * {@link LaneDispatcher}).</li>
+ * </ul>
+ */
+public class Recipient {
+    private static final Logger logger = LoggerFactory.getLogger(Recipient.class);
+
+    /**
+     * Attribute with the time to send the email.
+     */
+    public static final String SEND_AT = "send-at";
+
+    /**
+     * Attribute with the priority lane of the email.
+     */
+    public static final String LANE = "lane";
+
+    /**
+     * Valid lane names.
+     */
+    public static final String LANE_PATTERN = "[A-Za-z0-9_.-]+";
+
+    private final String address;
+    private final long sendAt;
+    private final String lane;
+
+    /**
+     * Create a new recipient.
+     *
+     * @param address Recipient(s) of the email
+     * @param sendAt  Time to send the email (epoch milliseconds), 0 to send it
+     *                now
+     * @param lane    Priority lane of the email, null for the default lane
+     */
+    public Recipient(String address, long sendAt, String lane) {
+        this.address = address;
+        this.sendAt = sendAt;
+        this.lane = lane;
+    }
+
+    /**
+     * Parse one line of a recipients file. Invalid attributes are logged and
+     * ignored.
+     *
+     * @param line          Address followed by its attributes
+     * @param defaultSendAt Time to send the email when the line does not have
+     *                      one (epoch milliseconds), 0 to send it now
+     * @param nowMillis     Time relative times are based on (epoch milliseconds)
+     * @return New recipient
+     */
+    public static Recipient parse(String line, long defaultSendAt, long nowMillis) {
+        String[] parts = line.split(";");
+        StringBuilder address = new StringBuilder(parts[0]);
+        long sendAt = defaultSendAt;
+        String lane = null;
+        for (int i = 1; i < parts.length; i++) {
+            int separator = parts[i].indexOf('=');
+            if (separator < 0) {
+                // Not an attribute, semicolon was part of the address
+                address.append(';').append(parts[i]);
+                continue;
+            }
+            String name = parts[i].substring(0, separator).trim();
+            String value = parts[i].substring(separator + 1).trim();
+            if (SEND_AT.equalsIgnoreCase(name)) {
+                try {
+                    sendAt = parseTime(value, nowMillis);
+                } catch (DateTimeParseException e) {
+                    logger.warn("Invalid {} of recipient {}: {}", SEND_AT, parts[0].trim(), value);
+                }
+            } else if (LANE.equalsIgnoreCase(name)) {
+                if (value.matches(LANE_PATTERN)) {
+                    lane = value;
+                } else {
+                    logger.warn("Invalid {} of recipient {}: {}", LANE, parts[0].trim(), value);
+                }
+            } else {
+                logger.warn("Unknown attribute of recipient {}: {}", parts[0].trim(), name);
+            }
+        }
+        return new Recipient(address.toString().trim(), sendAt, lane);
+    }
+
+    /**
+     * Parse a time to send emails. It can be:
+     * <ul>
+     * <li>A date and time with offset, e.g. <code>2026-10-19T10:00:00Z</code> or
+     * <code>2026-10-19T12:00:00+02:00</code>.</li>
+     * <li>A local date and time in the default time zone, e.g.
+     * <code>2026-10-19T10:00:00</code>.</li>
+     * <li>A duration from now, e.g. <code>PT10M</code>.</li>
+     * </ul>
+     *
+     * @param time      Time to parse
+     * @param nowMillis Time durations are added to (epoch milliseconds)
+     * @return Time (epoch milliseconds)
+     * @throws DateTimeParseException In case the time is not valid
+     */
+    public static long parseTime(String time, long nowMillis) throws DateTimeParseException {
+        if (time.startsWith("P") || time.startsWith("p")) {
+            return nowMillis + Duration.parse(time).toMillis();
+        }
+        try {
+            return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // No offset, local time
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * Get the recipient(s) of the email.
+     *
+     * @return Address(es)
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the time to send the email.
+     *
+     * @return Time (epoch milliseconds), 0 to send it now
+     */
+    public long getSendAt() {
+        return sendAt;
+    }
+
+    /**
+     * Get the priority lane of the email.
+     *
+     * @return Lane name, null for the default lane
+     */
+    public String getLane() {
+        return lane;
+    }
+}
@@ -0,0 +1,221 @@
+package com.amazon.aws;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Filter applied to the recipients before any email is created, so duplicated
+ * and suppressed addresses do not cost sending quota nor bounces.
+ *
+ * It holds the suppression list (loaded from a local file) and the addresses
+ * already accepted during the run, both off-heap (see
+ * {@link OffHeapAddressSet}). For suppression lists too big to be held exactly
+ * an {@link OffHeapBloomFilter} can be used instead, at the cost of skipping a
+ * few addresses that are not suppressed (false positives).
+ */
+public class RecipientFilter implements Predicate<String> {
+    private static final Logger logger = LoggerFactory.getLogger(RecipientFilter.class);
+
+    private final OffHeapAddressSet suppressed;
+    private final OffHeapBloomFilter suppressedBloom;
+    private final OffHeapAddressSet seen;
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final AtomicLong duplicatedCount = new AtomicLong();
+    private final AtomicLong invalidCount = new AtomicLong();
+
+    private RecipientFilter(OffHeapAddressSet suppressed, OffHeapBloomFilter suppressedBloom,
+            OffHeapAddressSet seen) {
+        this.suppressed = suppressed;
+        this.suppressedBloom = suppressedBloom;
+        this.seen = seen;
+    }
+
+    /**
+     * Create a new filter.
+     *
+     * @param suppressionList    File with the suppressed addresses, one per line.
+     *                           Empty lines and lines starting with # are
+     *                           ignored. It can be null.
+     * @param bloomFpp           False positive rate of the Bloom filter used to
+     *                           hold the suppression list. When it is 0 the
+     *                           suppression list is held exactly.
+     * @param expectedRecipients Expected number of recipients to be checked for
+     *                           duplicates, 0 to not check duplicates
+     * @return New filter
+     * @throws IOException In case the suppression list cannot be read
+     */
+    public static RecipientFilter create(Path suppressionList, double bloomFpp, long expectedRecipients)
+            throws IOException {
+        OffHeapAddressSet suppressed = null;
+        OffHeapBloomFilter suppressedBloom = null;
+        if (suppressionList != null) {
+            long count = countAddresses(suppressionList);
+            if (bloomFpp > 0) {
+                suppressedBloom = new OffHeapBloomFilter(count, bloomFpp);
+                readAddresses(suppressionList, suppressedBloom::put);
+                logger.debug("Suppression list loaded: {} addresses into a Bloom filter of {} bits", count,
+                        suppressedBloom.getBits());
+            } else {
+                suppressed = new OffHeapAddressSet(count);
+                readAddresses(suppressionList, suppressed::add);
+                logger.debug("Suppression list loaded: {} addresses", suppressed.size());
+            }
+        }
+        OffHeapAddressSet seen = expectedRecipients > 0 ? new OffHeapAddressSet(expectedRecipients) : null;
+        return new RecipientFilter(suppressed, suppressedBloom, seen);
+    }
+
+    /**
+     * Normalize an address to be compared: display name is removed, spaces are
+     * trimmed and it is lower cased.
+     *
+     * @param address Email address, e.g. <code>Name &lt;name@email.com&gt;</code>
+     * @return Normalized address, e.g. <code>name@email.com</code>
+     */
+    public static String normalize(String address) {
+        String normalized = address.trim();
+        int start = normalized.lastIndexOf('<');
+        int end = normalized.lastIndexOf('>');
+        if (start >= 0 && end > start) {
+            normalized = normalized.substring(start + 1, end).trim();
+        }
+        return normalized.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check if a recipient must receive an email: it is not suppressed and it
+     * has not been accepted before.
+     *
+     * @param address Email address
+     * @return true if the email must be sent
+     */
+    @Override
+    public boolean test(String address) {
+        String normalized = normalize(address);
+        if (isSuppressedNormalized(normalized)) {
+            suppressedCount.incrementAndGet();
+            return false;
+        }
+        if (seen != null && seen.add(normalized) == false) {
+            duplicatedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check if the address of a recipient from a recipients file is valid, so
+     * invalid recipients are skipped before they reach the filter instead of
+     * failing at send time.
+     *
+     * @param address Email address
+     * @return true if the address is valid
+     */
+    public boolean isValid(String address) {
+        List<String> rejected = new ArrayList<>();
+        if (EmailUtils.validateAddresses(address, rejected).isEmpty() == false && rejected.isEmpty()) {
+            return true;
+        }
+        invalidCount.incrementAndGet();
+        logger.warn("Invalid recipient, it will not receive any email: {}",
+                rejected.isEmpty() ? address : String.join(", ", rejected));
+        return false;
+    }
+
+    /**
+     * Check if an address is in the suppression list. Duplicates are not
+     * checked nor counted.
+     *
+     * @param address Email address
+     * @return true if the address is suppressed
+     */
+    public boolean isSuppressed(String address) {
+        return isSuppressedNormalized(normalize(address));
+    }
+
+    /**
+     * Get the number of recipients skipped because they are suppressed.
+     *
+     * @return Suppressed recipients
+     */
+    public long getSuppressed() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * Get the number of recipients skipped because they were already accepted.
+     *
+     * @return Duplicated recipients
+     */
+    public long getDuplicated() {
+        return duplicatedCount.get();
+    }
+
+    /**
+     * Get the number of recipients skipped because their address is invalid.
+     *
+     * @return Invalid recipients
+     */
+    public long getInvalid() {
+        return invalidCount.get();
+    }
+
+    private boolean isSuppressedNormalized(String normalized) {
+        if (suppressed != null) {
+            return suppressed.contains(normalized);
+        }
+        return suppressedBloom != null && suppressedBloom.mightContain(normalized);
+    }
+
+    /**
+     * Count the addresses of a file, so the structures holding them can be
+     * sized before reading it.
+     *
+     * @param file File with one address per line
+     * @return Number of addresses
+     * @throws IOException In case the file cannot be read
+     */
+    public static long countAddresses(Path file) throws IOException {
+        try (Stream<String> lines = lines(file)) {
+            return lines.count();
+        }
+    }
+
+    /**
+     * Read the addresses of a file: one address per line, empty lines and lines
+     * starting with # are ignored.
+     *
+     * @param file File with one address per line
+     * @return Addresses, the stream must be closed
+     * @throws IOException In case the file cannot be opened
+     */
+    public static Stream<String> lines(Path file) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                logger.error("Error closing file", e);
+            }
+        }).map(String::trim).filter(line -> line.isEmpty() == false && line.startsWith("#") == false);
+    }
+
+    private static void readAddresses(Path file, Consumer<String> consumer) throws IOException {
+        try (Stream<String> lines = lines(file)) {
+            lines.map(RecipientFilter::normalize).forEach(consumer);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.amazon.aws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * MIME message serialized before it is sent, so the SMTP transport writes its
+ * bytes as they are instead of serializing the message while it holds a
+ * connection (see {@link EmailUtils#renderSmtpMessage}).
+ *
+ * The message is serialized without the headers SMTP never sends (Bcc and
+ * Content-Length), and changes made after {@link #render()} are not sent.
+ */
+public class RenderedMessage extends MimeMessage {
+    /**
+     * Headers skipped by JavaMail when it sends a message with SMTP
+     */
+    private static final String[] SMTP_IGNORED_HEADERS = { "Bcc", "Content-Length" };
+
+    private byte[] rendered;
+
+    /**
+     * Create a new empty message.
+     *
+     * @param session Session the message belongs to
+     */
+    public RenderedMessage(Session session) {
+        super(session);
+    }
+
+    /**
+     * Serialize the message. Changes not saved yet are saved first (see
+     * {@link #saveChanges()}).
+     *
+     * @throws MessagingException In case the message cannot be serialized
+     * @throws IOException        In case the content cannot be read (e.g. an
+     *                            attachment)
+     */
+    public void render() throws MessagingException, IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        super.writeTo(outputStream, SMTP_IGNORED_HEADERS);
+        rendered = outputStream.toByteArray();
+    }
+
+    /**
+     * Get the size of the serialized message.
+     *
+     * @return Size in bytes, -1 when it has not been rendered
+     */
+    public int getRenderedSize() {
+        return rendered != null ? rendered.length : -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String[] ignoreList) throws IOException, MessagingException {
+        if (rendered == null) {
+            super.writeTo(os, ignoreList);
+            return;
+        }
+        os.write(rendered);
+    }
+}
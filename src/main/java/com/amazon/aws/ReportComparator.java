@@ -0,0 +1,168 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compare two run reports (see {@link RunReport}) and flag regressions of the
+ * candidate report against the baseline one.
+ *
+ * A regression is flagged when throughput decreases or p99 latency increases
+ * more than the given threshold (percentage).
+ */
+public class ReportComparator {
+    private static final Logger logger = LoggerFactory.getLogger(ReportComparator.class);
+
+    /**
+     * Default threshold (percentage) to flag a regression.
+     */
+    public static final double DEFAULT_THRESHOLD = 5.0;
+
+    /**
+     * Exit code when a regression has been found.
+     */
+    public static final int EXIT_REGRESSION = 2;
+
+    private double threshold;
+    private List<String> regressions = new ArrayList<>();
+
+    /**
+     * Create a new comparator.
+     *
+     * @param threshold Percentage of change allowed before flagging a regression
+     */
+    public ReportComparator(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * <code>compare</code> subcommand: read both reports, show the differences
+     * and flag the regressions.
+     *
+     * @param args Subcommand arguments: baseline report, candidate report and
+     *             optionally the threshold
+     * @return Exit code: 0 when there are no regressions,
+     *         {@link #EXIT_REGRESSION} when there are regressions and 1 in case
+     *         of error
+     */
+    public static int run(String[] args) {
+        Options options = new Options();
+        Option thresholdOption = Option.builder("T").longOpt("threshold").argName("threshold").hasArg()
+                .required(false)
+                .desc("Percentage of change allowed before flagging a regression. Default to 5.").build();
+        options.addOption(thresholdOption);
+
+        CommandLineParser parser = new DefaultParser();
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine commandLine;
+        try {
+            commandLine = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            formatter.printHelp("send-email compare <baseline report> <candidate report>", options);
+            return 1;
+        }
+        if (commandLine.getArgList().size() != 2) {
+            System.out.println("Baseline and candidate reports are required.");
+            formatter.printHelp("send-email compare <baseline report> <candidate report>", options);
+            return 1;
+        }
+        double threshold = DEFAULT_THRESHOLD;
+        try {
+            threshold = Double.parseDouble(commandLine.getOptionValue("threshold", String.valueOf(threshold)));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid threshold.");
+            System.out.println("Using defalt value: " + DEFAULT_THRESHOLD);
+        }
+
+        RunReport baseline;
+        RunReport candidate;
+        try {
+            baseline = RunReport.read(Paths.get(commandLine.getArgList().get(0)));
+            candidate = RunReport.read(Paths.get(commandLine.getArgList().get(1)));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Error reading report", e);
+            return 1;
+        }
+        ReportComparator comparator = new ReportComparator(threshold);
+        comparator.compare(baseline, candidate).forEach(logger::info);
+        if (comparator.getRegressions().isEmpty()) {
+            logger.info("No regressions found (threshold: {}%).", threshold);
+            return 0;
+        }
+        comparator.getRegressions().forEach(regression -> logger.warn("Regression: {}", regression));
+        return EXIT_REGRESSION;
+    }
+
+    /**
+     * Compare both reports.
+     *
+     * @param baseline  Report used as reference
+     * @param candidate Report to be checked
+     * @return Lines with the comparison of each metric
+     */
+    public List<String> compare(RunReport baseline, RunReport candidate) {
+        regressions.clear();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Protocol: %s -> %s", baseline.get("protocol"), candidate.get("protocol")));
+        lines.add(compareMetric(baseline, candidate, RunReport.FIELD_THROUGHPUT, true));
+        lines.add(compareMetric(baseline, candidate, RunReport.FIELD_LATENCY_P50, false));
+        lines.add(compareMetric(baseline, candidate, RunReport.FIELD_LATENCY_P90, false));
+        lines.add(compareMetric(baseline, candidate, RunReport.FIELD_LATENCY_P99, false));
+        lines.add(compareMetric(baseline, candidate, RunReport.FIELD_EMAILS_SENT, true));
+        lines.add(compareMetric(baseline, candidate, RunReport.FIELD_EMAILS_FAILED, false));
+        Set<String> errorFields = new TreeSet<>();
+        baseline.getFields().keySet().stream().filter(name -> name.startsWith(RunReport.ERRORS_PREFIX))
+                .forEach(errorFields::add);
+        candidate.getFields().keySet().stream().filter(name -> name.startsWith(RunReport.ERRORS_PREFIX))
+                .forEach(errorFields::add);
+        for (String errorField : errorFields) {
+            lines.add(String.format("%s: %s -> %s", errorField, valueOf(baseline.getNumber(errorField)),
+                    valueOf(candidate.getNumber(errorField))));
+        }
+        return lines;
+    }
+
+    private String compareMetric(RunReport baseline, RunReport candidate, String name, boolean higherIsBetter) {
+        Double before = baseline.getNumber(name);
+        Double after = candidate.getNumber(name);
+        if (before == null || after == null) {
+            return String.format("%s: %s -> %s", name, valueOf(before), valueOf(after));
+        }
+        double change = before == 0 ? 0 : (after - before) / before * 100.0;
+        String line = String.format("%s: %.3f -> %.3f (%+.2f%%)", name, before, after, change);
+        boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+        boolean checked = RunReport.FIELD_THROUGHPUT.equals(name) || RunReport.FIELD_LATENCY_P99.equals(name);
+        if (checked && regression) {
+            regressions.add(line);
+        }
+        return line;
+    }
+
+    private static String valueOf(Double value) {
+        return value == null ? "-" : String.format("%.3f", value);
+    }
+
+    /**
+     * Get the regressions found by the last comparison.
+     *
+     * @return Lines with the regressed metrics
+     */
+    public List<String> getRegressions() {
+        return regressions;
+    }
+}
@@ -0,0 +1,156 @@
+package com.amazon.aws;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory and garbage collection cost of a process: bytes allocated by all the
+ * threads of the JVM, garbage collections (count and time) and peak heap used.
+ *
+ * Usage is measured between {@link #start()} and {@link #finish()}. Allocated
+ * bytes are measured for each thread against its own count at start (threads
+ * started meanwhile count from zero), so threads finishing before
+ * {@link #finish()} do not take the bytes of the others away, but their own
+ * bytes are not included: it must be called before the workers are disposed.
+ * Allocated bytes are only available on JVMs supporting
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])}.
+ */
+public class ResourceUsage {
+    private final com.sun.management.ThreadMXBean threads;
+    private final Map<Long, Long> startAllocatedBytes = new HashMap<>();
+    private long startGcCount;
+    private long startGcMillis;
+    private long allocatedBytes = -1;
+    private long gcCount = 0;
+    private long gcMillis = 0;
+    private long peakHeapBytes = 0;
+
+    private ResourceUsage() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) threadBean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    /**
+     * Start measuring. Peak usage of the heap pools is reset.
+     *
+     * @return New object measuring the usage
+     */
+    public static ResourceUsage start() {
+        ResourceUsage usage = new ResourceUsage();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        usage.startGcCount = totalGcCount();
+        usage.startGcMillis = totalGcMillis();
+        if (usage.threads != null) {
+            long[] ids = usage.threads.getAllThreadIds();
+            long[] allocated = usage.threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (allocated[i] >= 0) {
+                    usage.startAllocatedBytes.put(ids[i], allocated[i]);
+                }
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Finish measuring.
+     *
+     * @return This object
+     */
+    public ResourceUsage finish() {
+        if (threads != null) {
+            allocatedBytes = allocatedBytesSinceStart();
+        }
+        gcCount = totalGcCount() - startGcCount;
+        gcMillis = totalGcMillis() - startGcMillis;
+        // Pools peak at different times, so their sum is an upper bound
+        peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Get the bytes allocated by all threads while measuring.
+     *
+     * @return Allocated bytes, -1 if not supported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private long allocatedBytesSinceStart() {
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            // -1 for threads finished meanwhile
+            if (allocated[i] >= 0) {
+                total += Math.max(allocated[i] - startAllocatedBytes.getOrDefault(ids[i], 0L), 0);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of garbage collections while measuring.
+     *
+     * @return Garbage collections
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Get the time spent in garbage collections while measuring (accumulated
+     * time, including the concurrent collectors).
+     *
+     * @return Time in milliseconds
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * Get the peak heap used while measuring.
+     *
+     * @return Bytes used
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+}
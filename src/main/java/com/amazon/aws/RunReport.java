@@ -0,0 +1,366 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Machine readable report of a run. It is a flat list of fields (configuration,
+ * counts, throughput, latency percentiles, errors by type and JVM information)
+ * that can be written to and read from JSON or CSV files.
+ *
+ * Format is chosen by the file extension: files ending with <code>.csv</code>
+ * are CSV files (a header line and a values line), any other file is a JSON
+ * object.
+ */
+public class RunReport {
+    public static final String FIELD_THROUGHPUT = "throughputEmailsPerSecond";
+    public static final String FIELD_LATENCY_P50 = "latencyP50Ms";
+    public static final String FIELD_LATENCY_P90 = "latencyP90Ms";
+    public static final String FIELD_LATENCY_P99 = "latencyP99Ms";
+    public static final String FIELD_EMAILS_SENT = "emailsSent";
+    public static final String FIELD_EMAILS_FAILED = "emailsFailed";
+    public static final String ERRORS_PREFIX = "errors.";
+
+    /**
+     * Report fields. Values are either {@link String} or {@link Number}, flags
+     * are written as the strings <code>true</code> and <code>false</code>.
+     */
+    private Map<String, Object> fields = new LinkedHashMap<>();
+
+    /**
+     * Create an empty report.
+     */
+    public RunReport() {
+    }
+
+    /**
+     * Create a new report of a measured process.
+     *
+     * @param sendEmailInfo Information got from command line
+     * @param duration      Duration of the measured process
+     * @param statistics    Statistics of the measured process
+     * @param warmup        Duration of the warmup process, null if there was no
+     *                      warmup
+     * @return New report
+     */
+    public static RunReport create(SendEmailInfo sendEmailInfo, Duration duration, SendStatistics statistics,
+            Duration warmup) {
+        RunReport report = new RunReport();
+        report.put("timestamp", Instant.now().toString());
+        report.put("protocol", sendEmailInfo.getProtocol());
+        report.put("config.repetitions", sendEmailInfo.getRepetitions());
+        report.put("config.warmup", sendEmailInfo.getWarmup());
+        report.put("config.concurrency", sendEmailInfo.getConcurrency());
+        report.put("config.adaptive", String.valueOf(sendEmailInfo.isAdaptive()));
+        report.put("config.maxConcurrency", sendEmailInfo.getMaxConcurrency());
+        report.put("config.virtualThreads", String.valueOf(sendEmailInfo.isVirtualThreads()));
+        report.put("config.smtpBatchSize", sendEmailInfo.getSmtpBatchSize());
+        if (ProtocolEnum.MIXED.name().equals(sendEmailInfo.getProtocol())) {
+            report.put("config.splitRatio", sendEmailInfo.getSplitRatio() == ProtocolRouter.DYNAMIC ? "dynamic"
+                    : sendEmailInfo.getSplitRatio());
+        }
+        if (sendEmailInfo.getRenderThreads() > 0) {
+            report.put("config.renderThreads", sendEmailInfo.getRenderThreads());
+            report.put("config.renderBuffer", sendEmailInfo.getRenderBuffer());
+        }
+        if (sendEmailInfo.getLanes() != null) {
+            report.put("config.lanes", sendEmailInfo.getLanes());
+            report.put("config.laneCapacity", sendEmailInfo.getLaneCapacity());
+        }
+        report.put("config.recipientsFile", String.valueOf(sendEmailInfo.getRecipientsFile()));
+        report.put("config.suppressionList", String.valueOf(sendEmailInfo.getSuppressionList()));
+        report.put("config.subjectLength", sendEmailInfo.getSubject().length());
+        report.put("config.bodyLength", sendEmailInfo.getBody().length());
+        report.put("config.attachments", String.valueOf(sendEmailInfo.getAttachments()));
+        report.put(FIELD_EMAILS_SENT, statistics.getSent());
+        report.put(FIELD_EMAILS_FAILED, statistics.getFailed());
+        report.put("emailsAbandoned", statistics.getAbandoned());
+        report.put("emailsNotStarted", statistics.getNotStarted());
+        report.put("recipientsSuppressed", statistics.getSuppressed());
+        report.put("recipientsDuplicated", statistics.getDuplicated());
+        report.put("recipientsInvalid", statistics.getInvalid());
+        report.put("concurrencyLimitFinal", statistics.getConcurrencyLimit());
+        report.put("concurrencyLimitPeak", statistics.getPeakConcurrencyLimit());
+        ResourceUsage usage = statistics.getResourceUsage();
+        if (usage != null) {
+            report.put("memory.allocatedBytes", usage.getAllocatedBytes());
+            report.put("memory.allocatedBytesPerEmail", statistics.getAllocatedBytesPerEmail());
+            report.put("memory.peakHeapBytes", usage.getPeakHeapBytes());
+            report.put("gc.count", usage.getGcCount());
+            report.put("gc.timeMs", usage.getGcMillis());
+        }
+        report.put("durationMs", duration.toMillis());
+        if (warmup != null) {
+            report.put("warmupDurationMs", warmup.toMillis());
+        }
+        double seconds = duration.toNanos() / 1_000_000_000.0;
+        report.put(FIELD_THROUGHPUT, seconds > 0 ? round(statistics.getSent() / seconds) : 0);
+        report.put("latencyMinMs", toMillis(statistics.getLatencyPercentile(0)));
+        report.put(FIELD_LATENCY_P50, toMillis(statistics.getLatencyPercentile(50)));
+        report.put(FIELD_LATENCY_P90, toMillis(statistics.getLatencyPercentile(90)));
+        report.put(FIELD_LATENCY_P99, toMillis(statistics.getLatencyPercentile(99)));
+        report.put("latencyMaxMs", toMillis(statistics.getLatencyPercentile(100)));
+        statistics.getErrors().forEach((type, count) -> report.put(ERRORS_PREFIX + type, count));
+        statistics.getProtocolStatistics().forEach((protocol, protocolStats) -> {
+            String prefix = "protocol." + protocol.toString().toLowerCase() + ".";
+            report.put(prefix + FIELD_EMAILS_SENT, protocolStats.getSent());
+            report.put(prefix + FIELD_EMAILS_FAILED, protocolStats.getFailed());
+            report.put(prefix + FIELD_THROUGHPUT, seconds > 0 ? round(protocolStats.getSent() / seconds) : 0);
+            report.put(prefix + FIELD_LATENCY_P50, toMillis(protocolStats.getLatencyPercentile(50)));
+            report.put(prefix + FIELD_LATENCY_P99, toMillis(protocolStats.getLatencyPercentile(99)));
+        });
+        statistics.getLaneStatistics().forEach((lane, laneStats) -> {
+            String prefix = "lane." + lane + ".";
+            report.put(prefix + "emailsDispatched", laneStats.getSent());
+            report.put(prefix + "waitP50Ms", toMillis(laneStats.getLatencyPercentile(50)));
+            report.put(prefix + "waitP99Ms", toMillis(laneStats.getLatencyPercentile(99)));
+        });
+        statistics.getPhases().getDurations().forEach((phase, durations) -> {
+            String prefix = "phase." + phase.toString().toLowerCase();
+            report.put(prefix + ".avgMs", round(SendStatistics.getAverage(durations) / 1_000_000.0));
+            report.put(prefix + ".p99Ms", round(SendStatistics.getPercentile(durations, 99) / 1_000_000.0));
+        });
+        Runtime runtime = Runtime.getRuntime();
+        report.put("jvm.version", System.getProperty("java.version"));
+        report.put("jvm.vendor", System.getProperty("java.vendor"));
+        report.put("jvm.name", System.getProperty("java.vm.name"));
+        report.put("jvm.availableProcessors", runtime.availableProcessors());
+        report.put("jvm.maxHeapBytes", runtime.maxMemory());
+        report.put("os.name", System.getProperty("os.name"));
+        report.put("os.arch", System.getProperty("os.arch"));
+        return report;
+    }
+
+    private static double toMillis(Duration duration) {
+        return round(duration.toNanos() / 1_000_000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    /**
+     * Set the value of a field.
+     *
+     * @param name  Field name
+     * @param value Field value, either a {@link String} or a {@link Number}
+     */
+    public void put(String name, Object value) {
+        fields.put(name, value);
+    }
+
+    /**
+     * Get the value of a field.
+     *
+     * @param name Field name
+     * @return Field value, null if it does not exist
+     */
+    public Object get(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * Get the numeric value of a field.
+     *
+     * @param name Field name
+     * @return Field value, null if it does not exist or it is not a number
+     */
+    public Double getNumber(String name) {
+        Object value = fields.get(name);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return null;
+    }
+
+    /**
+     * Get all fields of the report.
+     *
+     * @return Fields in the order they were added
+     */
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    /**
+     * Write the report into the given file.
+     *
+     * @param path File to write. Format is chosen by its extension.
+     * @throws IOException
+     */
+    public void write(Path path) throws IOException {
+        String content = isCsv(path) ? toCsv() : toJson();
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read a report previously written with {@link #write(Path)}.
+     *
+     * @param path File to read. Format is chosen by its extension.
+     * @return New report
+     * @throws IOException              In case the file cannot be read
+     * @throws IllegalArgumentException In case the file is not a valid report
+     */
+    public static RunReport read(Path path) throws IOException {
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        return isCsv(path) ? fromCsv(content) : fromJson(content);
+    }
+
+    private static boolean isCsv(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    /**
+     * Convert the report into a JSON object.
+     *
+     * @return JSON object with one member per field
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        int remaining = fields.size();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            json.append("  \"").append(escapeJson(field.getKey())).append("\": ");
+            if (field.getValue() instanceof Number) {
+                json.append(field.getValue());
+            } else {
+                json.append('"').append(escapeJson(String.valueOf(field.getValue()))).append('"');
+            }
+            json.append(--remaining > 0 ? ",\n" : "\n");
+        }
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Convert the report into CSV, with a header line and a values line.
+     *
+     * @return CSV content
+     */
+    public String toCsv() {
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            names.add(escapeCsv(field.getKey()));
+            values.add(field.getValue() instanceof Number ? field.getValue().toString()
+                    : escapeCsv(String.valueOf(field.getValue())));
+        }
+        return String.join(",", names) + "\n" + String.join(",", values) + "\n";
+    }
+
+    /**
+     * Escape a JSON string value (quotes, backslashes and control characters).
+     *
+     * @param value Value to write
+     * @return Value ready to be written between quotes
+     */
+    static String escapeJson(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Quote a CSV value when it contains separators, quotes or line breaks.
+     *
+     * @param value Value to write
+     * @return Value ready to be written
+     */
+    static String escapeCsv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    /**
+     * Parse a flat JSON object (string, number, boolean and null members).
+     */
+    private static RunReport fromJson(String json) {
+        Object document = new JsonReader(json).next();
+        if (document instanceof Map == false) {
+            throw new IllegalArgumentException("Invalid report: JSON object expected");
+        }
+        RunReport report = new RunReport();
+        for (Map.Entry<?, ?> member : ((Map<?, ?>) document).entrySet()) {
+            Object value = member.getValue();
+            if (value instanceof Map || value instanceof List) {
+                throw new IllegalArgumentException("Invalid report: nested value in field " + member.getKey());
+            }
+            report.put((String) member.getKey(), value instanceof Boolean ? value.toString() : value);
+        }
+        return report;
+    }
+
+    /**
+     * Parse CSV content with a header line and a values line.
+     */
+    private static RunReport fromCsv(String csv) {
+        List<List<String>> lines = new ArrayList<>();
+        List<String> line = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < csv.length(); i++) {
+            char c = csv.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                line.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n') {
+                line.add(value.toString());
+                value.setLength(0);
+                lines.add(line);
+                line = new ArrayList<>();
+            } else if (c != '\r') {
+                value.append(c);
+            }
+        }
+        if (value.length() > 0 || line.isEmpty() == false) {
+            line.add(value.toString());
+            lines.add(line);
+        }
+        if (lines.size() < 2 || lines.get(0).size() != lines.get(1).size()) {
+            throw new IllegalArgumentException("Invalid report: header and values lines expected");
+        }
+        RunReport report = new RunReport();
+        for (int i = 0; i < lines.get(0).size(); i++) {
+            report.put(lines.get(0).get(i), parseLiteral(lines.get(1).get(i)));
+        }
+        return report;
+    }
+
+    private static Object parseLiteral(String literal) {
+        if ("null".equals(literal)) {
+            return null;
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return literal;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.amazon.aws;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Holds the emails to be sent later (see {@link Recipient#getSendAt()}) in a
+ * {@link TimingWheel} and feeds them to the send pipeline when their time
+ * arrives.
+ *
+ * Scheduled emails are persisted into a journal, so they survive restarts. The
+ * journal starts with a hash of the content of the email (<code>C hash</code>,
+ * see {@link #contentHash(SendEmailInfo)}), then it records each scheduled
+ * email (<code>S id sendAt lane recipient</code>, lane is <code>-</code> for
+ * the default one) and each email finished (<code>F id</code>): sent, failed
+ * or skipped by the filter of the recipients.
+ *
+ * Pending emails of an existing journal are resumed only when it is requested
+ * and the content of the email has not changed, so a journal is never resumed
+ * by chance or with a different email. Emails are recorded as finished once
+ * the pipeline is done with them, so the ones in flight when the process is
+ * killed are sent again on resume rather than lost. The journal is deleted
+ * once all its emails have finished.
+ *
+ * When no scheduling option is given (see
+ * {@link #onDemand(Path, SendEmailInfo, GracefulShutdown)}) the journal is only
+ * opened if a recipient has its own time to be sent, so a journal left by an
+ * earlier campaign does not stop the runs that do not schedule emails.
+ */
+public class ScheduledSends implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledSends.class);
+
+    /**
+     * Resolution of the scheduled times.
+     */
+    public static final Duration TICK = Duration.ofMillis(100);
+
+    private final Path journal;
+    private final GracefulShutdown shutdown;
+    private String contentHash;
+    private SendEmailInfo unopened = null;
+    private final TimingWheel<Entry> wheel;
+    private final Map<Recipient, Long> inFlight = new IdentityHashMap<>();
+    private final long resumed;
+    private BufferedWriter writer = null;
+    private long nextId;
+
+    private static final class Entry {
+        private final long id;
+        private final Recipient recipient;
+
+        private Entry(long id, Recipient recipient) {
+            this.id = id;
+            this.recipient = recipient;
+        }
+    }
+
+    private ScheduledSends(Path journal, String contentHash, GracefulShutdown shutdown, TimingWheel<Entry> wheel,
+            long resumed, long nextId) {
+        this.journal = journal;
+        this.contentHash = contentHash;
+        this.shutdown = shutdown;
+        this.wheel = wheel;
+        this.resumed = resumed;
+        this.nextId = nextId;
+    }
+
+    /**
+     * Open the scheduled emails, resuming the pending emails of the journal
+     * when it exists and it is requested.
+     *
+     * @param journal     Journal of the scheduled emails
+     * @param contentHash Hash of the content of the email, @see
+     *                    {@link #contentHash(SendEmailInfo)}
+     * @param resume      Whether the pending emails of the journal have to be
+     *                    resumed
+     * @param shutdown    Shutdown handler, scheduled emails stop being fed to
+     *                    the pipeline once a shutdown has been requested
+     * @return New object
+     * @throws IOException           In case the journal cannot be read
+     * @throws IllegalStateException In case the journal has pending emails that
+     *                               cannot be resumed: resuming has not been
+     *                               requested or they were scheduled for a
+     *                               different content
+     */
+    public static ScheduledSends open(Path journal, String contentHash, boolean resume, GracefulShutdown shutdown)
+            throws IOException {
+        TimingWheel<Entry> wheel = new TimingWheel<>(TICK.toMillis(), System.currentTimeMillis());
+        long resumed = 0;
+        long nextId = 0;
+        if (Files.exists(journal)) {
+            Map<Long, Recipient> pending = new LinkedHashMap<>();
+            String journalHash = null;
+            try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ", 5);
+                    if ("C".equals(fields[0]) && fields.length == 2) {
+                        journalHash = fields[1];
+                        continue;
+                    }
+                    try {
+                        long id = Long.parseLong(fields[1]);
+                        nextId = Math.max(nextId, id + 1);
+                        if ("S".equals(fields[0]) && fields.length == 5) {
+                            pending.put(id, new Recipient(fields[4], Long.parseLong(fields[2]),
+                                    "-".equals(fields[3]) ? null : fields[3]));
+                        } else if ("F".equals(fields[0])) {
+                            pending.remove(id);
+                        }
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        // Last line written partially when the process was killed
+                        logger.warn("Invalid line of journal {}: {}", journal, line);
+                    }
+                }
+            }
+            if (pending.isEmpty()) {
+                Files.delete(journal);
+                return new ScheduledSends(journal, contentHash, shutdown, wheel, 0, 0);
+            }
+            if (resume == false) {
+                throw new IllegalStateException("Journal " + journal + " has " + pending.size()
+                        + " scheduled emails pending, they are only resumed when the journal is given explicitly");
+            }
+            if (contentHash.equals(journalHash) == false) {
+                throw new IllegalStateException("Journal " + journal + " has " + pending.size()
+                        + " scheduled emails pending for a different email (from, subject, body or attachments),"
+                        + " they are not resumed");
+            }
+            pending.forEach((id, recipient) -> wheel.add(recipient.getSendAt(), new Entry(id, recipient)));
+            resumed = pending.size();
+            // Compact the journal
+            Path compacted = journal.resolveSibling(journal.getFileName() + ".tmp");
+            try (BufferedWriter compactWriter = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                compactWriter.write("C " + contentHash + "\n");
+                for (Map.Entry<Long, Recipient> entry : pending.entrySet()) {
+                    compactWriter.write(toRecord(entry.getKey(), entry.getValue()));
+                }
+            }
+            Files.move(compacted, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return new ScheduledSends(journal, contentHash, shutdown, wheel, resumed, nextId);
+    }
+
+    /**
+     * Create the scheduled emails without opening the journal. It is opened,
+     * without resuming its pending emails, once the first email has to be
+     * scheduled; until then it is neither read nor deleted.
+     *
+     * @param journal       Journal of the scheduled emails
+     * @param sendEmailInfo Information of the email, to get the hash of its
+     *                      content when the journal is opened
+     * @param shutdown      Shutdown handler, scheduled emails stop being fed
+     *                      to the pipeline once a shutdown has been requested
+     * @return New object
+     */
+    public static ScheduledSends onDemand(Path journal, SendEmailInfo sendEmailInfo, GracefulShutdown shutdown) {
+        ScheduledSends scheduledSends = new ScheduledSends(journal, null, shutdown,
+                new TimingWheel<>(TICK.toMillis(), System.currentTimeMillis()), 0, 0);
+        scheduledSends.unopened = sendEmailInfo;
+        return scheduledSends;
+    }
+
+    /**
+     * Get the hash of the content of the email: from, subject, body and
+     * attachments (the content of the file when it exists).
+     *
+     * @param sendEmailInfo Information of the email
+     * @return Hash as an hexadecimal string
+     * @throws IOException In case the attachments cannot be read
+     */
+    public static String contentHash(SendEmailInfo sendEmailInfo) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM supports SHA-256
+            throw new IllegalStateException(e);
+        }
+        for (String field : new String[] { sendEmailInfo.getFrom(), sendEmailInfo.getSubject(),
+                sendEmailInfo.getBody(), sendEmailInfo.getAttachments() }) {
+            digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        Path attachments = sendEmailInfo.getAttachments() != null ? Paths.get(sendEmailInfo.getAttachments()) : null;
+        if (attachments != null && Files.isRegularFile(attachments)) {
+            byte[] buffer = new byte[8192];
+            try (InputStream input = Files.newInputStream(attachments)) {
+                int read;
+                while ((read = input.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Get the number of emails resumed from the journal.
+     *
+     * @return Emails resumed
+     */
+    public long getResumed() {
+        return resumed;
+    }
+
+    /**
+     * Get the number of scheduled emails not finished yet: waiting for their
+     * time or in the pipeline.
+     *
+     * @return Emails pending
+     */
+    public synchronized long getPending() {
+        return wheel.size() + inFlight.size();
+    }
+
+    /**
+     * Record a recipient as finished, so it is not resumed from the journal.
+     * Recipients that were not scheduled are ignored.
+     *
+     * @param recipient Recipient emitted by {@link #schedule(Flux)} whose email
+     *                  has been sent, has failed or has been skipped
+     */
+    public synchronized void finished(Recipient recipient) {
+        Long id = inFlight.remove(recipient);
+        if (id != null) {
+            write("F " + id + "\n");
+        }
+    }
+
+    /**
+     * Schedule the recipients. Recipients without a time, or whose time has
+     * arrived, are emitted as they are read, the rest are emitted when their
+     * time arrives.
+     *
+     * @param recipients Recipients to schedule, empty to emit only the emails
+     *                   resumed from the journal
+     * @return Recipients as they have to be sent. It completes once all the
+     *         recipients have been read and all the scheduled emails have
+     *         been emitted, or once a shutdown has been requested.
+     */
+    public Flux<Recipient> schedule(Flux<Recipient> recipients) {
+        return Flux.merge(schedule(Collections.singletonList(recipients)));
+    }
+
+    /**
+     * Schedule the recipients of several sources, each one read on its own
+     * (e.g. one per lane, see {@link LaneDispatcher#split(Flux)}).
+     *
+     * @param recipients Recipients of each source, empty to emit only the
+     *                   emails resumed from the journal
+     * @return Recipients of each source to be sent as they are read, in the
+     *         same order, followed by the scheduled recipients as their time
+     *         arrives. The last one completes once all the sources have been
+     *         read and all the scheduled emails have been emitted, or once a
+     *         shutdown has been requested.
+     */
+    public List<Flux<Recipient>> schedule(List<Flux<Recipient>> recipients) {
+        AtomicInteger reading = new AtomicInteger(recipients.size());
+        Sinks.One<Boolean> idle = Sinks.one();
+        List<Flux<Recipient>> scheduled = new ArrayList<>(recipients.size() + 1);
+        for (Flux<Recipient> source : recipients) {
+            scheduled.add(source
+                    .filter(recipient -> defer(recipient) == false)
+                    .doOnComplete(() -> {
+                        if (reading.decrementAndGet() == 0 && wheel.size() == 0) {
+                            idle.tryEmitValue(true);
+                        }
+                    }));
+        }
+        // Ticks dropped while the pipeline is busy are not lost, the wheel
+        // advances up to the current time
+        scheduled.add(Flux.interval(TICK, Schedulers.parallel())
+                .onBackpressureDrop()
+                .takeUntilOther(idle.asMono())
+                .takeWhile(tick -> shutdown.isDraining() == false && (reading.get() > 0 || wheel.size() > 0))
+                .concatMapIterable(tick -> expire()));
+        return scheduled;
+    }
+
+    /**
+     * Close the journal. It is deleted when there is no email pending.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            long pending = wheel.size() + inFlight.size();
+            if (unopened != null) {
+                // Journal never opened, it may belong to another campaign
+                return;
+            }
+            if (pending > 0) {
+                logger.info("{} scheduled emails not sent, they are kept in {}", pending, journal);
+            } else {
+                Files.deleteIfExists(journal);
+            }
+        } catch (IOException e) {
+            logger.error("Error closing journal", e);
+        }
+    }
+
+    /**
+     * Add the recipient to the wheel when its time has not arrived yet.
+     *
+     * @param recipient Recipient to schedule
+     * @return true if it has been added, false if it must be sent now
+     */
+    private synchronized boolean defer(Recipient recipient) {
+        if (recipient.getSendAt() <= System.currentTimeMillis()) {
+            return false;
+        }
+        if (unopened != null) {
+            openJournal();
+        }
+        long id = nextId++;
+        write(toRecord(id, recipient));
+        wheel.add(recipient.getSendAt(), new Entry(id, recipient));
+        return true;
+    }
+
+    /**
+     * Get the emails whose time has arrived. They are kept in flight until
+     * they finish, and the records of the emails finished so far are flushed.
+     */
+    private synchronized List<Recipient> expire() {
+        List<Entry> entries = wheel.advance(System.currentTimeMillis());
+        List<Recipient> recipients = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            inFlight.put(entry.recipient, entry.id);
+            recipients.add(entry.recipient);
+        }
+        try {
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return recipients;
+    }
+
+    /**
+     * Open the journal of an object created on demand, refusing it when it has
+     * pending emails.
+     */
+    private void openJournal() {
+        try {
+            String hash = contentHash(unopened);
+            open(journal, hash, false, shutdown);
+            contentHash = hash;
+            unopened = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String toRecord(long id, Recipient recipient) {
+        return "S " + id + " " + recipient.getSendAt() + " "
+                + (recipient.getLane() != null ? recipient.getLane() : "-") + " " + recipient.getAddress() + "\n";
+    }
+
+    private void write(String record) {
+        try {
+            if (writer == null) {
+                boolean created = Files.exists(journal) == false;
+                writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                if (created) {
+                    writer.write("C " + contentHash + "\n");
+                }
+            }
+            writer.write(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
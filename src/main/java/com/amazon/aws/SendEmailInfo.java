@@ -4,23 +4,47 @@ package com.amazon.aws;
  * Stores the process to send the email.
  */
 public class SendEmailInfo {
-    private ProtocolEnum protocol;
+    private String protocol;
     private String from;
     private String to;
     private String subject;
     private String body;
     private String attachments;
     private int repetitions = 1;
+    private int warmup = 0;
+    private String reportFile;
+    private int concurrency = 1;
+    private int drainTimeout = 30;
+    private String recipientsFile;
+    private String suppressionList;
+    private double suppressionBloomFpp = 0;
+    private boolean adaptive = false;
+    private int maxConcurrency = 64;
+    private double splitRatio = 0.5;
+    private String sinkDirectory = "sent-emails";
+    private long sendAt = 0;
+    private String scheduleJournal = "scheduled-sends.journal";
+    private boolean resumeScheduled = false;
+    private String lanes;
+    private int laneCapacity = 1000;
+    private String messageIndex;
+    private int renderThreads = 0;
+    private int renderBuffer = 0;
+    private boolean virtualThreads = false;
+    private int smtpBatchSize = 1;
+    private String eventLog;
 
     /**
      * Create a new object with the mandatory parameters
      * 
+     * @param protocol Name of the transport @see {@link EmailTransportProvider},
+     *                 or MIXED
      * @param from    Origin email address
      * @param to      Destination email adress(es)
      * @param subject Email subject
      * @param body    Email body
      */
-    public SendEmailInfo(ProtocolEnum protocol, String from, String to, String subject, String body) {
+    public SendEmailInfo(String protocol, String from, String to, String subject, String body) {
         this.protocol = protocol;
         this.from = from;
         this.to = to;
@@ -28,11 +52,11 @@ public class SendEmailInfo {
         this.body = body;
     }
 
-    public ProtocolEnum getProtocol() {
+    public String getProtocol() {
         return protocol;
     }
 
-    public void setProtocol(ProtocolEnum protocol) {
+    public void setProtocol(String protocol) {
         this.protocol = protocol;
     }
 
@@ -145,4 +169,420 @@ public class SendEmailInfo {
     public void setRepetitions(int repetitions) {
         this.repetitions = repetitions;
     }
+
+    /**
+     * Get number of warmup emails sent before the measured run starts
+     * 
+     * @return Warmup emails
+     */
+    public int getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Set number of warmup emails sent before the measured run starts. Warmup
+     * emails use the same client (or session) than the measured ones, but they
+     * are not included in the measured results.
+     * 
+     * @param warmup Numbers of warmup emails to be sent
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Get the file to write the run report
+     * 
+     * @return Report file, null when no report must be written
+     */
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * Set the file to write the run report
+     * 
+     * @param reportFile Report file. When it ends with .csv the report is written
+     *                   as CSV, otherwise as JSON.
+     */
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * Get maximum number of emails sent at the same time
+     * 
+     * @return Concurrency
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Set maximum number of emails sent at the same time
+     * 
+     * @param concurrency Maximum number of emails in flight
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Get seconds to wait for the emails in flight once sending has stopped
+     * 
+     * @return Drain timeout in seconds
+     */
+    public int getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Set seconds to wait for the emails in flight once sending has stopped,
+     * either because all emails have been submitted or because a shutdown has
+     * been requested.
+     * 
+     * @param drainTimeout Drain timeout in seconds
+     */
+    public void setDrainTimeout(int drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Get the file with the recipients, one email is sent to each one
+     * 
+     * @return Recipients file, null when the to address(es) are used
+     */
+    public String getRecipientsFile() {
+        return recipientsFile;
+    }
+
+    /**
+     * Set the file with the recipients, one email is sent to each one
+     * 
+     * @param recipientsFile File with one email address per line
+     */
+    public void setRecipientsFile(String recipientsFile) {
+        this.recipientsFile = recipientsFile;
+    }
+
+    /**
+     * Get the file with the addresses that must not receive any email
+     * 
+     * @return Suppression list file
+     */
+    public String getSuppressionList() {
+        return suppressionList;
+    }
+
+    /**
+     * Set the file with the addresses that must not receive any email
+     * 
+     * @param suppressionList File with one email address per line
+     */
+    public void setSuppressionList(String suppressionList) {
+        this.suppressionList = suppressionList;
+    }
+
+    /**
+     * Get the false positive rate of the Bloom filter holding the suppression
+     * list
+     * 
+     * @return False positive rate, 0 when the suppression list is held exactly
+     */
+    public double getSuppressionBloomFpp() {
+        return suppressionBloomFpp;
+    }
+
+    /**
+     * Set the false positive rate of the Bloom filter holding the suppression
+     * list
+     * 
+     * @param suppressionBloomFpp False positive rate, 0 to hold the suppression
+     *                            list exactly
+     */
+    public void setSuppressionBloomFpp(double suppressionBloomFpp) {
+        this.suppressionBloomFpp = suppressionBloomFpp;
+    }
+
+    /**
+     * Check if the number of emails sent at the same time adapts to the
+     * observed latency and throttling responses
+     * 
+     * @return true if the concurrency is adaptive
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Set if the number of emails sent at the same time adapts to the observed
+     * latency and throttling responses, starting from the concurrency
+     * 
+     * @param adaptive true to adapt the concurrency
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Get the maximum number of emails sent at the same time when the
+     * concurrency is adaptive
+     * 
+     * @return Maximum concurrency
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Set the maximum number of emails sent at the same time when the
+     * concurrency is adaptive
+     * 
+     * @param maxConcurrency Maximum concurrency
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Get the ratio of emails sent with API when the protocol is MIXED
+     * 
+     * @return Ratio between 0 and 1, or {@link ProtocolRouter#DYNAMIC}
+     */
+    public double getSplitRatio() {
+        return splitRatio;
+    }
+
+    /**
+     * Set the ratio of emails sent with API when the protocol is MIXED, the rest
+     * are sent with SMTP
+     * 
+     * @param splitRatio Ratio between 0 and 1, or {@link ProtocolRouter#DYNAMIC}
+     *                   to send more emails with the faster protocol
+     */
+    public void setSplitRatio(double splitRatio) {
+        this.splitRatio = splitRatio;
+    }
+
+    /**
+     * Get the directory where the emails are written by the FILE protocol
+     * 
+     * @return Sink directory
+     */
+    public String getSinkDirectory() {
+        return sinkDirectory;
+    }
+
+    /**
+     * Set the directory where the emails are written by the FILE protocol
+     * 
+     * @param sinkDirectory Sink directory, it is created when needed
+     */
+    public void setSinkDirectory(String sinkDirectory) {
+        this.sinkDirectory = sinkDirectory;
+    }
+
+    /**
+     * Get the time to send the emails that do not have their own time
+     * 
+     * @return Time (epoch milliseconds), 0 to send them now
+     */
+    public long getSendAt() {
+        return sendAt;
+    }
+
+    /**
+     * Set the time to send the emails that do not have their own time
+     * 
+     * @param sendAt Time (epoch milliseconds), 0 to send them now
+     */
+    public void setSendAt(long sendAt) {
+        this.sendAt = sendAt;
+    }
+
+    /**
+     * Get the journal where the scheduled emails are persisted
+     * 
+     * @return Journal file
+     */
+    public String getScheduleJournal() {
+        return scheduleJournal;
+    }
+
+    /**
+     * Set the journal where the scheduled emails are persisted
+     * 
+     * @param scheduleJournal Journal file, its pending emails are resumed when
+     *                        it exists and resuming is requested
+     */
+    public void setScheduleJournal(String scheduleJournal) {
+        this.scheduleJournal = scheduleJournal;
+    }
+
+    /**
+     * Check if the pending emails of an existing journal are resumed
+     * 
+     * @return true if they are resumed
+     */
+    public boolean isResumeScheduled() {
+        return resumeScheduled;
+    }
+
+    /**
+     * Set if the pending emails of an existing journal are resumed, only when
+     * the journal or the time to send the emails are given explicitly
+     * 
+     * @param resumeScheduled true to resume them
+     */
+    public void setResumeScheduled(boolean resumeScheduled) {
+        this.resumeScheduled = resumeScheduled;
+    }
+
+    /**
+     * Get the priority lanes of the recipients and their weights
+     * 
+     * @return Lanes @see {@link LaneDispatcher#parseLanes(String)}, null when
+     *         there are no lanes
+     */
+    public String getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Set the priority lanes of the recipients and their weights
+     * 
+     * @param lanes Lanes, e.g. <code>transactional:9,bulk:1</code>
+     */
+    public void setLanes(String lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * Get the maximum number of emails waiting in each priority lane
+     * 
+     * @return Lane capacity
+     */
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    /**
+     * Set the maximum number of emails waiting in each priority lane
+     * 
+     * @param laneCapacity Lane capacity
+     */
+    public void setLaneCapacity(int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+    }
+
+    /**
+     * Get the index where the message id of each email sent is recorded
+     * 
+     * @return Index file @see {@link MessageIdIndex}, null to not record them
+     */
+    public String getMessageIndex() {
+        return messageIndex;
+    }
+
+    /**
+     * Set the index where the message id of each email sent is recorded
+     * 
+     * @param messageIndex Index file, records are appended when it exists
+     */
+    public void setMessageIndex(String messageIndex) {
+        this.messageIndex = messageIndex;
+    }
+
+    /**
+     * Get the number of threads rendering the emails apart from sending them
+     * 
+     * @return Render threads, 0 when each email is built while it is sent
+     */
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    /**
+     * Set the number of threads rendering the emails apart from sending them
+     * 
+     * @param renderThreads Render threads, 0 to build each email while it is
+     *                      sent
+     */
+    public void setRenderThreads(int renderThreads) {
+        this.renderThreads = renderThreads;
+    }
+
+    /**
+     * Get the maximum number of emails rendered ahead of the send stage
+     * 
+     * @return Render buffer size, 0 for the maximum number of emails in flight
+     */
+    public int getRenderBuffer() {
+        return renderBuffer;
+    }
+
+    /**
+     * Set the maximum number of emails rendered ahead of the send stage
+     * 
+     * @param renderBuffer Render buffer size, 0 for the maximum number of emails
+     *                     in flight
+     */
+    public void setRenderBuffer(int renderBuffer) {
+        this.renderBuffer = renderBuffer;
+    }
+
+    /**
+     * Check if blocking sends run in virtual threads
+     * 
+     * @return true if each blocking send runs in a virtual thread of its own
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Set if blocking sends run in virtual threads
+     * 
+     * @param virtualThreads true to send each email in a virtual thread of its
+     *                       own (Java 21 or later)
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Get the maximum number of recipients of each SMTP transaction
+     * 
+     * @return SMTP batch size, 1 when each email is sent on its own
+     */
+    public int getSmtpBatchSize() {
+        return smtpBatchSize;
+    }
+
+    /**
+     * Set the maximum number of recipients of each SMTP transaction
+     * 
+     * @param smtpBatchSize SMTP batch size, 1 to send each email on its own
+     */
+    public void setSmtpBatchSize(int smtpBatchSize) {
+        this.smtpBatchSize = smtpBatchSize;
+    }
+
+    /**
+     * Get the file where the outcome of each email is written
+     * 
+     * @return Event log file @see {@link EventLog}, null to not write it
+     */
+    public String getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Set the file where the outcome of each email is written
+     * 
+     * @param eventLog Event log file, it is overwritten when it exists
+     */
+    public void setEventLog(String eventLog) {
+        this.eventLog = eventLog;
+    }
 }
@@ -0,0 +1,39 @@
+package com.amazon.aws;
+
+/**
+ * Phases of the lifecycle of each email sent, recorded by {@link PhaseRecorder}
+ */
+public enum SendPhase {
+    /**
+     * Waiting in the Reactor pipeline until a worker starts with the email
+     */
+    QUEUE,
+    /**
+     * Building the MIME message
+     */
+    BUILD,
+    /**
+     * Serializing the MIME message into bytes (SMTP serializes while sending,
+     * unless emails are rendered apart)
+     */
+    SERIALIZE,
+    /**
+     * Waiting between the render and the send stages until the email is sent
+     * (only when emails are rendered apart)
+     */
+    BUFFER,
+    /**
+     * Handing the email to the transport (API: marshalling and signing the
+     * request, SMTP: connecting to the server)
+     */
+    DISPATCH,
+    /**
+     * Waiting for a connection of the HTTP client pool (API only, sampled on
+     * one of every {@link PhaseRecorder#CONNECTION_SAMPLING} emails)
+     */
+    CONNECTION,
+    /**
+     * Waiting for the response (network and Simple Email Service)
+     */
+    RESPONSE
+}
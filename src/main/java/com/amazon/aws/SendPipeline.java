@@ -0,0 +1,484 @@
+package com.amazon.aws;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Sends emails with a given concurrency and waits for all of them to finish
+ * (completion barrier).
+ *
+ * Recipients can be filtered before any email is created (see
+ * {@link RecipientFilter}). The number of emails in flight can be adapted to
+ * the observed latency and throttling responses (see {@link AdaptiveLimiter}).
+ * The permit of each email is taken before the email is read from its source,
+ * so the emails waiting for the limit stay in the source (e.g. in their lane,
+ * see {@link LaneDispatcher}) instead of being read ahead.
+ *
+ * Emails can be rendered (built and serialized) in a stage apart from sending
+ * them: the render stage runs in a scheduler sized to the CPUs and the send
+ * stage keeps its own concurrency, connected by a bounded buffer of rendered
+ * emails. So CPU bound work does not hold the threads or the permits waiting
+ * for the network, and the network does not stall rendering.
+ *
+ * Emails with identical content can be grouped into batches, each one sent at
+ * once to all its recipients (e.g. one SMTP transaction with several
+ * recipients). Batches take a slot of the concurrency each, and their
+ * statistics are recorded for each recipient. A batch sent to some of its
+ * recipients only (see {@link PartialSendException}) counts as sent for them
+ * and as failed for the rest.
+ *
+ * The outcome of each email can be recorded into an {@link EventLog}, written
+ * by a thread of its own so logging does not slow down sending. The caller can
+ * also be told when each recipient has finished (sent, failed or skipped), e.g.
+ * to record it into the journal of scheduled emails (see
+ * {@link ScheduledSends#finished(Recipient)}).
+ *
+ * Once all emails have been submitted (or a shutdown has been requested, see
+ * {@link GracefulShutdown}) the emails in flight are waited up to the drain
+ * timeout. Emails still in flight when the timeout expires, and emails not
+ * started because of a shutdown, are reported as abandoned.
+ */
+public class SendPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(SendPipeline.class);
+
+    /**
+     * Interval to check if a shutdown has been requested while emails are
+     * submitted.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Maximum time a recipient waits for its batch to be filled before the
+     * batch is sent with the recipients got so far.
+     */
+    private static final Duration BATCH_TIMEOUT = Duration.ofMillis(100);
+
+    private final int concurrency;
+    private final AdaptiveLimiter limiter;
+    private final GracefulShutdown shutdown;
+    private final Scheduler renderScheduler;
+    private final int renderBuffer;
+    private final int batchSize;
+    private final EventLog eventLog;
+
+    /**
+     * Email going through the stages: its recipients and, once rendered, its
+     * rendered content.
+     */
+    private static final class Email {
+        private final List<Recipient> recipients;
+        private final List<String> to;
+        private final long seq;
+        private long acquired;
+        private Object rendered;
+
+        private Email(List<Recipient> recipients, long seq) {
+            this.recipients = recipients;
+            this.to = new ArrayList<>(recipients.size());
+            for (Recipient recipient : recipients) {
+                to.add(recipient.getAddress());
+            }
+            this.seq = seq;
+        }
+    }
+
+    private SendPipeline(Builder builder) {
+        this.concurrency = builder.limiter != null ? builder.limiter.getMaxLimit() : builder.concurrency;
+        this.limiter = builder.limiter;
+        this.shutdown = builder.shutdown;
+        this.renderScheduler = builder.renderScheduler;
+        this.renderBuffer = builder.renderBuffer > 0 ? builder.renderBuffer : this.concurrency;
+        this.batchSize = Math.max(builder.batchSize, 1);
+        this.eventLog = builder.eventLog;
+    }
+
+    /**
+     * Start building a new pipeline. By default the emails are sent with a
+     * fixed concurrency, each one on its own and built while it is sent.
+     *
+     * @param concurrency Maximum number of emails (or batches) in flight when
+     *                    there is no limiter
+     * @param shutdown    Shutdown handler, it also gives the drain timeout
+     * @return Builder of the pipeline
+     */
+    public static Builder builder(int concurrency, GracefulShutdown shutdown) {
+        return new Builder(concurrency, shutdown);
+    }
+
+    /**
+     * Builder of the optional stages of a pipeline.
+     */
+    public static class Builder {
+        private final int concurrency;
+        private final GracefulShutdown shutdown;
+        private AdaptiveLimiter limiter;
+        private Scheduler renderScheduler;
+        private int renderBuffer;
+        private int batchSize = 1;
+        private EventLog eventLog;
+
+        private Builder(int concurrency, GracefulShutdown shutdown) {
+            this.concurrency = concurrency;
+            this.shutdown = shutdown;
+        }
+
+        /**
+         * Adapt the number of emails in flight.
+         *
+         * @param limiter Limiter adapting the number of emails in flight, it can
+         *                be null
+         * @return This builder
+         */
+        public Builder limiter(AdaptiveLimiter limiter) {
+            this.limiter = limiter;
+            return this;
+        }
+
+        /**
+         * Render the emails apart from sending them.
+         *
+         * @param renderScheduler Scheduler where the emails are rendered, e.g.
+         *                        {@link reactor.core.scheduler.Schedulers#newParallel(String, int)}.
+         *                        When it is null, each email is built while it is
+         *                        sent.
+         * @param renderBuffer    Maximum number of emails rendered ahead of the
+         *                        send stage, 0 for the maximum number of emails in
+         *                        flight
+         * @return This builder
+         */
+        public Builder render(Scheduler renderScheduler, int renderBuffer) {
+            this.renderScheduler = renderScheduler;
+            this.renderBuffer = renderBuffer;
+            return this;
+        }
+
+        /**
+         * Group the emails into batches.
+         *
+         * @param batchSize Maximum number of recipients sent at once @see
+         *                  {@link Sender#sendBatch(List, Object, long)}, 1 to send
+         *                  each email on its own
+         * @return This builder
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Record the outcome of each email.
+         *
+         * @param eventLog Log of the outcome of each email, it can be null
+         * @return This builder
+         */
+        public Builder eventLog(EventLog eventLog) {
+            this.eventLog = eventLog;
+            return this;
+        }
+
+        /**
+         * Create the pipeline.
+         *
+         * @return New pipeline
+         */
+        public SendPipeline build() {
+            return new SendPipeline(this);
+        }
+    }
+
+    /**
+     * Sends one email.
+     */
+    public interface Sender {
+        /**
+         * Send one email.
+         *
+         * @param to  Recipient(s) of the email
+         * @param seq Sequence number of the email in the phases recorder of the
+         *            statistics
+         * @return {@link Mono} that completes once the email has been sent
+         */
+        Mono<?> send(String to, long seq);
+
+        /**
+         * Build and serialize one email without sending it. By default nothing
+         * is rendered.
+         *
+         * @param to  Recipient(s) of the email
+         * @param seq Sequence number of the email in the phases recorder of the
+         *            statistics
+         * @return Rendered email, null when the email is built while it is sent
+         * @throws Exception In case the email cannot be built
+         */
+        default Object render(String to, long seq) throws Exception {
+            return null;
+        }
+
+        /**
+         * Send one email already rendered by {@link #render(String, long)}.
+         *
+         * @param to       Recipient(s) of the email
+         * @param rendered Rendered email, it can be null
+         * @param seq      Sequence number of the email in the phases recorder of
+         *                 the statistics
+         * @return {@link Mono} that completes once the email has been sent
+         */
+        default Mono<?> send(String to, Object rendered, long seq) {
+            return send(to, seq);
+        }
+
+        /**
+         * Build and serialize one email to be sent at once to several
+         * recipients. By default nothing is rendered.
+         *
+         * @param recipients Recipients of the email
+         * @param seq        Sequence number of the batch in the phases recorder
+         *                   of the statistics
+         * @return Rendered email, null when the email is built while it is sent
+         * @throws Exception In case the email cannot be built
+         */
+        default Object renderBatch(List<String> recipients, long seq) throws Exception {
+            return null;
+        }
+
+        /**
+         * Send the same email at once to several recipients. By default each
+         * email is sent on its own, one after the other.
+         *
+         * @param recipients Recipients of the email
+         * @param rendered   Email rendered by {@link #renderBatch(List, long)},
+         *                   it can be null
+         * @param seq        Sequence number of the batch in the phases recorder
+         *                   of the statistics
+         * @return {@link Mono} that completes once the email has been sent to
+         *         all the recipients
+         */
+        default Mono<?> sendBatch(List<String> recipients, Object rendered, long seq) {
+            return Flux.fromIterable(recipients).concatMap(to -> send(to, seq)).then();
+        }
+    }
+
+    /**
+     * Send the same email to the given recipients the given number of times and
+     * wait for them.
+     *
+     * @param to        Recipient(s) of the emails
+     * @param emails    Number of emails to be sent
+     * @param stats     Statistics to record the emails into
+     * @param scheduler Scheduler where each email is started @see
+     *                  {@link #send(Flux, int, Predicate, Consumer, SendStatistics, Scheduler, Sender)}
+     * @param sender    Sends one email
+     * @throws InterruptedException In case the current thread is interrupted
+     *                              while waiting
+     */
+    public void send(String to, int emails, SendStatistics stats, Scheduler scheduler, Sender sender)
+            throws InterruptedException {
+        send(Flux.range(1, emails).map(index -> new Recipient(to, 0, null)), emails, null, null, stats, scheduler,
+                sender);
+    }
+
+    /**
+     * Send one email to each recipient and wait for them.
+     *
+     * @param recipients Recipient of each email
+     * @param total      Number of recipients, used to report the emails not
+     *                   started because of a shutdown
+     * @param filter     Filter of the recipients, recipients not accepted are
+     *                   skipped. It can be null.
+     * @param finished   Called with each recipient once its email has been
+     *                   sent, has failed or has been skipped by the filter, but
+     *                   not when it is abandoned. It can be null.
+     * @param stats      Statistics to record the emails into
+     * @param scheduler  Scheduler where each email is started, e.g.
+     *                   {@link reactor.core.scheduler.Schedulers#boundedElastic()}
+     *                   for blocking sends
+     * @param sender     Sends one email
+     * @throws InterruptedException In case the current thread is interrupted
+     *                              while waiting
+     */
+    public void send(Flux<Recipient> recipients, int total, Predicate<String> filter, Consumer<Recipient> finished,
+            SendStatistics stats, Scheduler scheduler, Sender sender) throws InterruptedException {
+        PhaseRecorder phases = stats.getPhases();
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch submitted = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+        Consumer<List<Recipient>> finish = finished == null ? done -> {
+        } : done -> done.forEach(finished);
+        Flux<Recipient> accepted = recipients
+                .takeWhile(recipient -> shutdown.isDraining() == false)
+                .doOnNext(recipient -> read.incrementAndGet())
+                .filter(recipient -> {
+                    if (filter == null || filter.test(recipient.getAddress())) {
+                        return true;
+                    }
+                    finish.accept(Collections.singletonList(recipient));
+                    return false;
+                })
+                .doFinally(signal -> submitted.countDown());
+        Flux<List<Recipient>> batches = batchSize > 1 ? accepted.bufferTimeout(batchSize, BATCH_TIMEOUT, true)
+                : accepted.map(Collections::singletonList);
+        Flux<Email> emails = batches.map(batch -> new Email(batch, phases.start()));
+        if (limiter != null) {
+            // Without prefetch, only one email is read while waiting for a permit
+            emails = emails.concatMap(email -> limiter.acquire().map(acquired -> {
+                email.acquired = acquired;
+                return email;
+            }), 0);
+        }
+        if (renderScheduler != null) {
+            // Render stage: no more than the buffer size rendered ahead of the send stage
+            emails = emails.flatMap(email -> Mono.fromCallable(() -> {
+                started.addAndGet(email.to.size());
+                phases.mark(email.seq, PhaseRecorder.STARTED);
+                email.rendered = renderEmail(sender, email.to, email.seq);
+                return email;
+            }).subscribeOn(renderScheduler).onErrorResume(e -> {
+                recordError(stats, email, "Error rendering email", e);
+                release();
+                finish.accept(email.recipients);
+                return Mono.empty();
+            }), renderBuffer);
+        }
+        Disposable subscription = emails
+                .flatMap(email -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    if (renderScheduler != null) {
+                        phases.mark(email.seq, PhaseRecorder.SEND_STARTED);
+                    } else {
+                        started.addAndGet(email.to.size());
+                        phases.mark(email.seq, PhaseRecorder.STARTED);
+                    }
+                    return sendEmail(sender, email.to, email.rendered, email.seq)
+                            .doOnSuccess(response -> {
+                                long latency = System.nanoTime() - start;
+                                for (int i = 0; i < email.to.size(); i++) {
+                                    stats.recordSuccess(latency);
+                                }
+                                if (eventLog != null) {
+                                    eventLog.recordSent(email.seq, email.to, latency, response);
+                                }
+                                if (limiter != null) {
+                                    limiter.onSuccess(latency);
+                                }
+                                finish.accept(email.recipients);
+                            }).onErrorResume(PartialSendException.class, e -> {
+                                recordPartial(stats, email, System.nanoTime() - start, e);
+                                if (limiter != null) {
+                                    limiter.onSuccess(System.nanoTime() - start);
+                                }
+                                finish.accept(email.recipients);
+                                return Mono.empty();
+                            });
+                }).subscribeOn(scheduler).doOnError(e -> {
+                    if (limiter != null && EmailUtils.isThrottlingError(e)) {
+                        limiter.onThrottled(email.acquired);
+                    }
+                }).doFinally(signal -> release()).onErrorResume(e -> {
+                    recordError(stats, email, "Error sending email", e);
+                    finish.accept(email.recipients);
+                    return Mono.empty();
+                }), concurrency)
+                .doFinally(signal -> completed.countDown())
+                .subscribe(response -> logger.debug("{}", response),
+                        e -> logger.error("Error reading recipients", e));
+
+        // Wait until all emails have been submitted or a shutdown is requested
+        while (submitted.await(POLL_MILLIS, TimeUnit.MILLISECONDS) == false && shutdown.isDraining() == false) {
+            logger.trace("Waiting for emails to be submitted");
+        }
+        // Completion barrier: wait for the emails in flight
+        if (completed.await(shutdown.getDrainTimeout().toMillis(), TimeUnit.MILLISECONDS) == false) {
+            subscription.dispose();
+        }
+        int inFlight = Math.max(started.get() - stats.getSent() - stats.getFailed(), 0);
+        int notStarted = Math.max(total - read.get(), 0);
+        stats.recordAbandoned(inFlight, notStarted);
+        if (inFlight > 0) {
+            logger.warn("Drain timeout expired, {} emails in flight abandoned", inFlight);
+        }
+        if (notStarted > 0) {
+            logger.warn("Shutdown requested, {} emails not sent", notStarted);
+        }
+        if (limiter != null) {
+            stats.recordConcurrencyLimit(limiter.getLimit(), limiter.getPeakLimit());
+        }
+    }
+
+    /**
+     * Render an email for the given recipients, at once for all of them when
+     * there are several.
+     */
+    private Object renderEmail(Sender sender, List<String> to, long seq) throws Exception {
+        return to.size() == 1 ? sender.render(to.get(0), seq) : sender.renderBatch(to, seq);
+    }
+
+    /**
+     * Send an email to the given recipients, at once to all of them when there
+     * are several.
+     */
+    private Mono<?> sendEmail(Sender sender, List<String> to, Object rendered, long seq) {
+        if (to.size() > 1) {
+            return sender.sendBatch(to, rendered, seq);
+        }
+        return renderScheduler != null ? sender.send(to.get(0), rendered, seq) : sender.send(to.get(0), seq);
+    }
+
+    /**
+     * Record an email that could not be sent. With an event log, the error goes
+     * to the event log instead of the application log.
+     */
+    private void recordError(SendStatistics stats, Email email, String message, Throwable error) {
+        for (int i = 0; i < email.to.size(); i++) {
+            stats.recordError(error);
+        }
+        if (eventLog != null) {
+            eventLog.recordFailed(email.seq, email.to, error);
+            logger.debug(message, error);
+        } else {
+            logger.error(message, error);
+        }
+    }
+
+    /**
+     * Record an email sent to some of its recipients only: the recipients sent
+     * count as sent and the rest as failed.
+     */
+    private void recordPartial(SendStatistics stats, Email email, long latency, PartialSendException partial) {
+        Throwable error = partial.getCause() != null ? partial.getCause() : partial;
+        for (int i = 0; i < partial.getSent().size(); i++) {
+            stats.recordSuccess(latency);
+        }
+        for (int i = 0; i < partial.getFailed().size(); i++) {
+            stats.recordError(error);
+        }
+        if (eventLog != null) {
+            eventLog.recordSent(email.seq, partial.getSent(), latency, partial.getResponse());
+            eventLog.recordFailed(email.seq, partial.getFailed(), error);
+            logger.debug("Email not sent to some recipients", error);
+        } else {
+            logger.error("Email not sent to {}", String.join(", ", partial.getFailed()), error);
+        }
+    }
+
+    private void release() {
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+}
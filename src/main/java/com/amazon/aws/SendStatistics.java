@@ -0,0 +1,342 @@
+package com.amazon.aws;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Statistics of the emails sent by a process: number of emails sent and failed,
+ * latency of the sent emails (see {@link LatencyHistogram}), errors grouped by
+ * type and the lifecycle phases of each email (see {@link PhaseRecorder}).
+ *
+ * It is safe to record from several threads at the same time. Emails sent are
+ * recorded without locks.
+ */
+public class SendStatistics {
+    /**
+     * Latency (in nanoseconds) of the emails sent successfully.
+     */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicInteger sent = new AtomicInteger();
+    private int failed = 0;
+    private int abandoned = 0;
+    private int notStarted = 0;
+    private long suppressed = 0;
+    private long duplicated = 0;
+    private long invalid = 0;
+    private int concurrencyLimit = 0;
+    private int peakConcurrencyLimit = 0;
+    private ResourceUsage resourceUsage = null;
+    private Map<String, Integer> errors = new TreeMap<>();
+    private PhaseRecorder phases;
+    private Map<ProtocolEnum, SendStatistics> protocols = new EnumMap<>(ProtocolEnum.class);
+    private Map<String, SendStatistics> lanes = new LinkedHashMap<>();
+
+    /**
+     * Create a new object with enough room for the expected number of emails.
+     *
+     * @param expectedEmails Expected number of emails to be sent. It is just a
+     *                       hint for the phases recorder, more emails can be
+     *                       recorded.
+     */
+    public SendStatistics(int expectedEmails) {
+        this.phases = new PhaseRecorder(expectedEmails);
+    }
+
+    /**
+     * Get the recorder of the lifecycle phases of the emails.
+     *
+     * @return Phases recorder
+     */
+    public PhaseRecorder getPhases() {
+        return phases;
+    }
+
+    /**
+     * Get the statistics of the emails sent with the given protocol, when a
+     * process sends with several protocols (see {@link ProtocolRouter}). They
+     * do not record the lifecycle phases.
+     *
+     * @param protocol Protocol
+     * @return Statistics of the protocol, created when needed
+     */
+    public synchronized SendStatistics getProtocolStatistics(ProtocolEnum protocol) {
+        return protocols.computeIfAbsent(protocol, key -> new SendStatistics(0));
+    }
+
+    /**
+     * Get the statistics of each protocol used by the process.
+     *
+     * @return New map with the statistics of each protocol, empty if the process
+     *         sent with a single protocol
+     */
+    public synchronized Map<ProtocolEnum, SendStatistics> getProtocolStatistics() {
+        return new EnumMap<>(protocols);
+    }
+
+    /**
+     * Get the statistics of the given priority lane (see
+     * {@link LaneDispatcher}): each email dispatched is recorded as sent, with
+     * the time it waited in the lane as its latency.
+     *
+     * @param lane Lane name
+     * @return Statistics of the lane, created when needed
+     */
+    public synchronized SendStatistics getLaneStatistics(String lane) {
+        return lanes.computeIfAbsent(lane, key -> new SendStatistics(0));
+    }
+
+    /**
+     * Get the statistics of each priority lane used by the process.
+     *
+     * @return New map with the statistics of each lane, in the order the lanes
+     *         were created, empty if the process did not use lanes
+     */
+    public synchronized Map<String, SendStatistics> getLaneStatistics() {
+        return new LinkedHashMap<>(lanes);
+    }
+
+    /**
+     * Record an email sent successfully.
+     *
+     * @param latencyNanos Time taken to send the email in nanoseconds
+     */
+    public void recordSuccess(long latencyNanos) {
+        latencies.record(latencyNanos);
+        sent.incrementAndGet();
+    }
+
+    /**
+     * Record an email that could not be sent.
+     *
+     * @param error Error got when sending the email. Errors are grouped by its
+     *              class name.
+     */
+    public synchronized void recordError(Throwable error) {
+        failed++;
+        errors.merge(getErrorType(error), 1, Integer::sum);
+    }
+
+    /**
+     * Record the emails that did not finish.
+     *
+     * @param abandoned  Emails still in flight when the drain timeout expired
+     * @param notStarted Emails not started because a shutdown was requested
+     */
+    public synchronized void recordAbandoned(int abandoned, int notStarted) {
+        this.abandoned = abandoned;
+        this.notStarted = notStarted;
+    }
+
+    /**
+     * Record the recipients skipped before sending (see {@link RecipientFilter}).
+     *
+     * @param suppressed Recipients in the suppression list
+     * @param duplicated Recipients already sent in the same run
+     * @param invalid    Recipients with an invalid address
+     */
+    public synchronized void recordSkipped(long suppressed, long duplicated, long invalid) {
+        this.suppressed = suppressed;
+        this.duplicated = duplicated;
+        this.invalid = invalid;
+    }
+
+    /**
+     * Record the limit of emails in flight set by an {@link AdaptiveLimiter}.
+     *
+     * @param limit     Limit when the process finished
+     * @param peakLimit Highest limit reached
+     */
+    public synchronized void recordConcurrencyLimit(int limit, int peakLimit) {
+        this.concurrencyLimit = limit;
+        this.peakConcurrencyLimit = peakLimit;
+    }
+
+    /**
+     * Record the memory and garbage collection cost of the process.
+     *
+     * @param resourceUsage Usage measured while sending
+     */
+    public synchronized void recordResourceUsage(ResourceUsage resourceUsage) {
+        this.resourceUsage = resourceUsage;
+    }
+
+    /**
+     * Get the name used to group the given error. Wrappers used by asynchronous
+     * calls are discarded in favour of their cause.
+     *
+     * @param error Error to get its type
+     * @return Simple class name of the error
+     */
+    public static String getErrorType(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Get the number of emails sent successfully.
+     *
+     * @return Emails sent
+     */
+    public int getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Get the number of emails that could not be sent.
+     *
+     * @return Emails failed
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the number of emails still in flight when the drain timeout expired.
+     *
+     * @return Emails abandoned
+     */
+    public synchronized int getAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * Get the number of emails not started because a shutdown was requested.
+     *
+     * @return Emails not started
+     */
+    public synchronized int getNotStarted() {
+        return notStarted;
+    }
+
+    /**
+     * Get the number of recipients skipped because they are suppressed.
+     *
+     * @return Recipients suppressed
+     */
+    public synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * Get the number of recipients skipped because they were already sent.
+     *
+     * @return Recipients duplicated
+     */
+    public synchronized long getDuplicated() {
+        return duplicated;
+    }
+
+    /**
+     * Get the number of recipients skipped because their address is invalid.
+     *
+     * @return Recipients invalid
+     */
+    public synchronized long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Get the limit of emails in flight when the process finished.
+     *
+     * @return Concurrency limit, 0 if the concurrency was not adaptive
+     */
+    public synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Get the highest limit of emails in flight reached.
+     *
+     * @return Peak concurrency limit, 0 if the concurrency was not adaptive
+     */
+    public synchronized int getPeakConcurrencyLimit() {
+        return peakConcurrencyLimit;
+    }
+
+    /**
+     * Get the memory and garbage collection cost of the process.
+     *
+     * @return Usage measured while sending, null if not measured
+     */
+    public synchronized ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * Get the bytes allocated per email processed (sent or failed).
+     *
+     * @return Allocated bytes per email, -1 if not measured
+     */
+    public synchronized long getAllocatedBytesPerEmail() {
+        int emails = sent.get() + failed;
+        if (resourceUsage == null || resourceUsage.getAllocatedBytes() < 0 || emails == 0) {
+            return -1;
+        }
+        return resourceUsage.getAllocatedBytes() / emails;
+    }
+
+    /**
+     * Get the number of errors grouped by error type.
+     *
+     * @return New map with error type as key and number of errors as value
+     */
+    public synchronized Map<String, Integer> getErrors() {
+        return new TreeMap<>(errors);
+    }
+
+    /**
+     * Get the given percentile of the latency of the emails sent successfully,
+     * using the nearest rank method (within 1% of the exact latency, the
+     * minimum and maximum are exact).
+     *
+     * @param percentile Percentile to get, between 0 and 100
+     * @return {@link Duration} with the latency, {@link Duration#ZERO} if no email
+     *         has been sent
+     */
+    public Duration getLatencyPercentile(double percentile) {
+        return Duration.ofNanos(latencies.getPercentile(percentile));
+    }
+
+    /**
+     * Get the given percentile of sorted values, using the nearest rank method.
+     *
+     * @param sortedValues Values sorted in ascending order
+     * @param percentile   Percentile to get, between 0 and 100
+     * @return Value of the percentile, 0 if there are no values
+     */
+    public static long getPercentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+        int index = Math.min(Math.max(rank - 1, 0), sortedValues.length - 1);
+        return sortedValues[index];
+    }
+
+    /**
+     * Get the average of the given values.
+     *
+     * @param values Values to average
+     * @return Average, 0 if there are no values
+     */
+    public static double getAverage(long[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+}
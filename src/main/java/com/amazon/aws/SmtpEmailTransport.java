@@ -0,0 +1,137 @@
+package com.amazon.aws;
+
+import java.io.IOException;
+import java.util.List;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Sends the emails with SMTP reusing the connections (see
+ * {@link SmtpTransportPool}).
+ *
+ * JavaMail is blocking, so each email is sent in a thread of its own. The
+ * shared bounded elastic scheduler is capped by the number of CPUs, so threads
+ * are sized to the emails in flight. Optionally each email is sent in a
+ * virtual thread instead (see {@link VirtualThreadExecutor}).
+ */
+public class SmtpEmailTransport implements EmailTransport {
+    private static final Logger logger = LoggerFactory.getLogger(SmtpEmailTransport.class);
+
+    private final SmtpTransportPool pool;
+    private final SendEmailInfo sendEmailInfo;
+    private final Scheduler scheduler;
+
+    /**
+     * Create a new transport.
+     *
+     * @param session       Session used to send the emails
+     * @param sendEmailInfo Information got from command line
+     */
+    public SmtpEmailTransport(Session session, SendEmailInfo sendEmailInfo) {
+        this.sendEmailInfo = sendEmailInfo;
+        int threads = sendEmailInfo.isAdaptive() ? sendEmailInfo.getMaxConcurrency()
+                : sendEmailInfo.getConcurrency();
+        this.pool = new SmtpTransportPool(session, threads);
+        this.scheduler = createScheduler(threads, sendEmailInfo.isVirtualThreads());
+    }
+
+    private static Scheduler createScheduler(int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            VirtualThreadExecutor executor = VirtualThreadExecutor.create(threads);
+            if (executor != null) {
+                return Schedulers.fromExecutorService(executor, "smtp-send");
+            }
+            logger.warn("Virtual threads cannot be used (SMTP sends need Java {} or later, older versions pin a carrier"
+                    + " thread per send), using platform threads", VirtualThreadExecutor.UNPINNED_SYNCHRONIZED_VERSION);
+        }
+        return Schedulers.newBoundedElastic(threads, Integer.MAX_VALUE, "smtp-send");
+    }
+
+    @Override
+    public Mono<?> send(String to, PhaseRecorder phases, long seq) {
+        return Mono.fromCallable(() -> EmailUtils.sendEmailWithSmtp(pool, sendEmailInfo.getFrom(), to,
+                sendEmailInfo.getSubject(), sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases, seq));
+    }
+
+    @Override
+    public Object render(String to, PhaseRecorder phases, long seq) throws MessagingException, IOException {
+        return EmailUtils.renderSmtpMessage(pool.getSession(), sendEmailInfo.getFrom(), to,
+                sendEmailInfo.getSubject(), sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases, seq);
+    }
+
+    @Override
+    public Mono<?> send(String to, Object rendered, PhaseRecorder phases, long seq) {
+        if (rendered instanceof Message) {
+            return Mono.fromCallable(() -> EmailUtils.sendMessageWithSmtp(pool, (Message) rendered, phases, seq));
+        }
+        return send(to, phases, seq);
+    }
+
+    /**
+     * Send the same email to all the recipients in a single SMTP transaction,
+     * so its content is sent once. Recipients are only in the envelope, so
+     * they do not see each other.
+     */
+    @Override
+    public Mono<?> sendBatch(List<String> recipients, PhaseRecorder phases, long seq) {
+        return Mono.fromCallable(() -> EmailUtils.sendMessageWithSmtp(pool,
+                (Message) renderBatch(recipients, phases, seq), recipients, phases, seq));
+    }
+
+    @Override
+    public Object renderBatch(List<String> recipients, PhaseRecorder phases, long seq)
+            throws MessagingException, IOException {
+        return EmailUtils.renderSmtpBatchMessage(pool.getSession(), sendEmailInfo.getFrom(),
+                sendEmailInfo.getSubject(), sendEmailInfo.getBody(), sendEmailInfo.getAttachments(), phases, seq);
+    }
+
+    @Override
+    public Mono<?> sendBatch(List<String> recipients, Object rendered, PhaseRecorder phases, long seq) {
+        if (rendered instanceof Message) {
+            return Mono.fromCallable(
+                    () -> EmailUtils.sendMessageWithSmtp(pool, (Message) rendered, recipients, phases, seq));
+        }
+        return sendBatch(recipients, phases, seq);
+    }
+
+    @Override
+    public String getMessageId(Object response) {
+        return response instanceof String ? (String) response : null;
+    }
+
+    @Override
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        scheduler.dispose();
+    }
+
+    /**
+     * Provider of {@link SmtpEmailTransport}.
+     */
+    public static class Provider implements EmailTransportProvider {
+        @Override
+        public String getName() {
+            return ProtocolEnum.SMTP.name();
+        }
+
+        @Override
+        public EmailTransport create(SendEmailInfo sendEmailInfo) {
+            Session session = EmailUtils.createSmtpSession();
+            return session != null ? new SmtpEmailTransport(session, sendEmailInfo) : null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.amazon.aws;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of connected SMTP {@link Transport} objects, so connections are reused
+ * by all the emails sent with the same {@link Session}.
+ *
+ * Transports are created and connected when there is no idle one, up to the
+ * maximum number of connections: further borrowers wait for a transport to be
+ * given back. Idle transports are reused as they are, checking the connection
+ * (a NOOP round trip) only when they have been idle long enough for the server
+ * to close it.
+ *
+ * Closing the pool does not wait for the transports in use (e.g. emails
+ * abandoned after the drain timeout), they are closed once given back.
+ */
+public class SmtpTransportPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    /**
+     * Time a transport can be idle before its connection is checked.
+     */
+    private static final long CHECK_IDLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Session session;
+    private final Semaphore connections;
+    private final BlockingQueue<Idle> idle = new LinkedBlockingQueue<>();
+    private final Set<Transport> transports = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    /**
+     * Transport given back and the time it was given back.
+     */
+    private static final class Idle {
+        private final Transport transport;
+        private final long sinceNanos;
+
+        private Idle(Transport transport, long sinceNanos) {
+            this.transport = transport;
+            this.sinceNanos = sinceNanos;
+        }
+    }
+
+    /**
+     * Create a new pool.
+     *
+     * @param session        Session used to create the transports @see
+     *                       {@link EmailUtils#createSmtpSession()}
+     * @param maxConnections Maximum number of transports in use at the same
+     *                       time, e.g. the maximum number of emails sent at the
+     *                       same time
+     */
+    public SmtpTransportPool(Session session, int maxConnections) {
+        this.session = session;
+        this.connections = new Semaphore(Math.max(maxConnections, 1));
+    }
+
+    /**
+     * Get the session used to create the transports.
+     *
+     * @return Session
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Get a connected transport, waiting for one to be given back when the
+     * maximum number of connections are in use. Once used it must be given back
+     * with {@link #release(Transport)} or {@link #discard(Transport)}.
+     *
+     * @return Connected transport
+     * @throws MessagingException In case a new transport cannot be connected,
+     *                            or the thread is interrupted while waiting
+     */
+    public Transport borrow() throws MessagingException {
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection", e);
+        }
+        Idle reused = idle.poll();
+        Transport transport;
+        boolean connected;
+        if (reused != null) {
+            transport = reused.transport;
+            // Given back connected, check it only when the server may have closed it
+            connected = System.nanoTime() - reused.sinceNanos < CHECK_IDLE_NANOS || transport.isConnected();
+        } else {
+            transport = session.getTransport();
+            transports.add(transport);
+            connected = false;
+        }
+        if (connected == false) {
+            try {
+                transport.connect();
+            } catch (MessagingException | RuntimeException e) {
+                discard(transport);
+                throw e;
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Give back a transport to be reused, its connection must still be usable
+     * (otherwise use {@link #discard(Transport)}).
+     *
+     * @param transport Transport got with {@link #borrow()}
+     */
+    public void release(Transport transport) {
+        Idle released = new Idle(transport, System.nanoTime());
+        idle.offer(released);
+        connections.release();
+        if (closed && idle.remove(released)) {
+            transports.remove(transport);
+            closeTransport(transport);
+        }
+    }
+
+    /**
+     * Close a transport that cannot be reused (e.g. after an error).
+     *
+     * @param transport Transport got with {@link #borrow()}
+     */
+    public void discard(Transport transport) {
+        transports.remove(transport);
+        connections.release();
+        closeTransport(transport);
+    }
+
+    /**
+     * Close the idle transports created by this pool. Transports in use are
+     * closed once they are given back.
+     */
+    @Override
+    public void close() {
+        logger.debug("Closing {} SMTP connections", transports.size());
+        closed = true;
+        Idle released;
+        while ((released = idle.poll()) != null) {
+            transports.remove(released.transport);
+            closeTransport(released.transport);
+        }
+    }
+
+    private static void closeTransport(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            logger.error("Error closing session", e);
+        }
+    }
+}
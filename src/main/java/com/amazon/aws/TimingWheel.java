@@ -0,0 +1,130 @@
+package com.amazon.aws;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding values until their deadline.
+ *
+ * Each level has 64 slots, the slots of level 0 span one tick and the slots of
+ * each next level span a whole turn of the previous one, so 6 levels cover
+ * 64^6 ticks. Values are added into the slot of their deadline in O(1) and,
+ * when the wheel advances, the slots of higher levels are cascaded to the lower
+ * ones as their time arrives, so each value is moved at most once per level.
+ * Deadlines beyond the last level wait in its slots until they get closer.
+ *
+ * Values are held in singly linked lists, so memory is one small node per
+ * value. It is thread safe.
+ *
+ * @param <T> Type of the values
+ */
+public class TimingWheel<T> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private final long tickMillis;
+    private final Node<T>[][] slots;
+    private long currentTick;
+    private long size = 0;
+
+    private static final class Node<T> {
+        private final long tick;
+        private final T value;
+        private Node<T> next;
+
+        private Node(long tick, T value) {
+            this.tick = tick;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Create a new empty wheel.
+     *
+     * @param tickMillis Resolution of the wheel in milliseconds
+     * @param nowMillis  Current time (epoch milliseconds)
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new Node[LEVELS][SLOTS];
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Add a value. Values whose deadline has already passed expire on the next
+     * tick.
+     *
+     * @param deadlineMillis Deadline (epoch milliseconds)
+     * @param value          Value to be returned once expired
+     */
+    public synchronized void add(long deadlineMillis, T value) {
+        // Round up, so values never expire before their deadline
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        place(new Node<>(tick, value));
+        size++;
+    }
+
+    /**
+     * Advance the wheel up to the given time.
+     *
+     * @param nowMillis Current time (epoch milliseconds)
+     * @return Values expired, in no particular order
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long nowTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        if (size == 0) {
+            currentTick = Math.max(currentTick, nowTick);
+            return expired;
+        }
+        while (currentTick < nowTick) {
+            currentTick++;
+            // Cascade the slots of higher levels whose turn starts now
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                int index = (int) ((currentTick >>> (BITS * level)) & MASK);
+                Node<T> node = slots[level][index];
+                slots[level][index] = null;
+                while (node != null) {
+                    Node<T> next = node.next;
+                    place(node);
+                    node = next;
+                }
+            }
+            int index = (int) (currentTick & MASK);
+            Node<T> node = slots[0][index];
+            slots[0][index] = null;
+            while (node != null) {
+                expired.add(node.value);
+                size--;
+                node = node.next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Get the number of values not expired yet.
+     *
+     * @return Values in the wheel
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private void place(Node<T> node) {
+        long delta = node.tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && (delta >>> (BITS * (level + 1))) != 0) {
+            level++;
+        }
+        int index = (int) ((node.tick >>> (BITS * level)) & MASK);
+        node.next = slots[level][index];
+        slots[level][index] = node;
+    }
+}
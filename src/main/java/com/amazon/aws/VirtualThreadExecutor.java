@@ -0,0 +1,109 @@
+package com.amazon.aws;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs each task in a virtual thread of its own, with a semaphore limiting the
+ * tasks running at the same time. Blocking sends (e.g. JavaMail) then cost a
+ * virtual thread each instead of a platform thread, so hundreds of them can
+ * wait for the network at the same time.
+ *
+ * Virtual threads need Java 21 or later, but before Java 24 a virtual thread
+ * blocked inside synchronized code pins its carrier thread. JavaMail sends
+ * inside synchronized methods, so each send in flight would hold a carrier
+ * thread: as many platform threads as with a bounded elastic scheduler, and
+ * nothing gained. So {@link #create(int)} returns null before Java 24. The
+ * tool is built for Java 11, so the virtual thread executor is looked up at
+ * runtime.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    /**
+     * First Java version whose virtual threads do not pin their carrier thread
+     * when they block inside synchronized code
+     */
+    public static final int UNPINNED_SYNCHRONIZED_VERSION = 24;
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    private VirtualThreadExecutor(ExecutorService executor, int maxConcurrency) {
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Create a new executor.
+     *
+     * @param maxConcurrency Maximum number of tasks running at the same time,
+     *                       the rest wait (in their virtual threads) for a
+     *                       running one to finish
+     * @return New executor, null if the running JVM is older than
+     *         {@link #UNPINNED_SYNCHRONIZED_VERSION}
+     */
+    public static VirtualThreadExecutor create(int maxConcurrency) {
+        if (Runtime.version().feature() < UNPINNED_SYNCHRONIZED_VERSION) {
+            return null;
+        }
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new VirtualThreadExecutor((ExecutorService) method.invoke(null), maxConcurrency);
+        } catch (ReflectiveOperationException e) {
+            logger.error("Cannot create virtual thread executor", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // Cancelled while waiting for a permit
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,67 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class JsonReaderTest {
+
+    @Test
+    void readsValues() {
+        Object document = new JsonReader("{\"s\": \"text\", \"n\": -1.5e2, \"t\": true, \"f\": false, \"z\": null,"
+                + " \"a\": [1, \"two\", []], \"o\": {}}").next();
+        Map<?, ?> object = (Map<?, ?>) document;
+        assertEquals(Arrays.asList("s", "n", "t", "f", "z", "a", "o"), Arrays.asList(object.keySet().toArray()));
+        assertEquals("text", object.get("s"));
+        assertEquals(-150.0, object.get("n"));
+        assertEquals(Boolean.TRUE, object.get("t"));
+        assertEquals(Boolean.FALSE, object.get("f"));
+        assertTrue(object.containsKey("z"));
+        assertNull(object.get("z"));
+        assertEquals(Arrays.asList(1.0, "two", Collections.emptyList()), object.get("a"));
+        assertEquals(Collections.emptyMap(), object.get("o"));
+    }
+
+    @Test
+    void readsEscapes() {
+        assertEquals("q\" b\\ s/ \b\f\n\r\t \u00e9\u20ac", new JsonReader(
+                "\"q\\\" b\\\\ s\\/ \\b\\f\\n\\r\\t \\u00e9\\u20AC\"").next());
+    }
+
+    @Test
+    void readsSeveralDocuments() {
+        JsonReader reader = new JsonReader("{\"a\":1}\n{\"a\":2}\n  ");
+        assertTrue(reader.hasNext());
+        assertEquals(1.0, JsonReader.get(reader.next(), "a"));
+        assertTrue(reader.hasNext());
+        assertEquals(2.0, JsonReader.get(reader.next(), "a"));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void getsNestedMembers() {
+        Object notification = new JsonReader("{\"mail\": {\"messageId\": \"id-1\"}, \"list\": []}").next();
+        assertEquals("id-1", JsonReader.get(notification, "mail", "messageId"));
+        assertNull(JsonReader.get(notification, "mail", "missing"));
+        assertNull(JsonReader.get(notification, "list", "messageId"));
+        assertNull(JsonReader.get(null, "mail"));
+    }
+
+    @Test
+    void rejectsInvalidJson() {
+        for (String json : new String[] { "", "{", "{\"a\" 1}", "{\"a\": 1,}", "[1 2]", "\"unterminated",
+                "\"trailing\\", "\"\\u12\"", "\"\\u12", "\"\\u12G4\"",
+                // Arabic-Indic digits
+                "\"\\u\u0661\u0662\u0663\u0664\"", "tru", "nul", "1.2.3", "-" }) {
+            assertThrows(IllegalArgumentException.class, () -> new JsonReader(json).next(), json);
+        }
+    }
+}
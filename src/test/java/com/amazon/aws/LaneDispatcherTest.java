@@ -0,0 +1,128 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+class LaneDispatcherTest {
+
+    @Test
+    void parsesLanes() {
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("transactional", 9);
+        expected.put("bulk", 1);
+        expected.put("other", 1);
+        assertEquals(expected, LaneDispatcher.parseLanes("transactional:9, bulk:1,other"));
+        assertEquals(Arrays.asList("bulk", "transactional"),
+                new ArrayList<>(LaneDispatcher.parseLanes("bulk,transactional:3").keySet()));
+    }
+
+    @Test
+    void rejectsInvalidLanes() {
+        assertThrows(IllegalArgumentException.class, () -> LaneDispatcher.parseLanes("a,a"));
+        assertThrows(IllegalArgumentException.class, () -> LaneDispatcher.parseLanes("a:0"));
+        assertThrows(IllegalArgumentException.class, () -> LaneDispatcher.parseLanes("a:x"));
+        assertThrows(IllegalArgumentException.class, () -> LaneDispatcher.parseLanes("a b"));
+        assertThrows(IllegalArgumentException.class, () -> LaneDispatcher.parseLanes(""));
+    }
+
+    @Test
+    void dispatchesByWeight() {
+        List<Recipient> recipients = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            recipients.add(new Recipient("bulk" + i + "@example.com", 0, "bulk"));
+        }
+        for (int i = 0; i < 8; i++) {
+            recipients.add(new Recipient("urgent" + i + "@example.com", 0, "urgent"));
+        }
+        List<String> lanes = dispatch("urgent:3,bulk:1", recipients, 100);
+        // Smooth weighted round robin while both lanes have emails, then the rest
+        assertEquals(Arrays.asList("urgent", "urgent", "bulk", "urgent", "urgent", "urgent", "bulk", "urgent",
+                "urgent", "urgent", "bulk", "bulk", "bulk", "bulk", "bulk", "bulk"), lanes);
+    }
+
+    @Test
+    void sendsUnknownLanesThroughTheDefaultOne() {
+        List<Recipient> recipients = Arrays.asList(new Recipient("a@example.com", 0, null),
+                new Recipient("b@example.com", 0, "missing"), new Recipient("c@example.com", 0, "bulk"));
+        SendStatistics stats = new SendStatistics(3);
+        List<String> lanes = dispatch("default:1,bulk:1", recipients, 100, stats);
+        assertEquals(3, lanes.size());
+        assertEquals(2, stats.getLaneStatistics("default").getSent());
+        assertEquals(1, stats.getLaneStatistics("bulk").getSent());
+    }
+
+    @Test
+    void fullLaneDoesNotBlockTheOthers() {
+        List<Recipient> recipients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            recipients.add(new Recipient("bulk" + i + "@example.com", 0, "bulk"));
+        }
+        recipients.add(new Recipient("urgent@example.com", 0, "urgent"));
+        // The urgent email is read while the bulk lane is full
+        List<String> lanes = dispatch("urgent:100,bulk:1", recipients, 4);
+        assertEquals(11, lanes.size());
+        assertEquals("urgent", lanes.get(0));
+    }
+
+    @Test
+    void dispatchesScheduledRecipientsByLane() {
+        List<Recipient> scheduled = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            scheduled.add(new Recipient("bulk" + i + "@example.com", 0, "bulk"));
+        }
+        scheduled.add(new Recipient("urgent@example.com", 0, "urgent"));
+        LaneDispatcher dispatcher = new LaneDispatcher(LaneDispatcher.parseLanes("urgent:100,bulk:1"), 1);
+        // Scheduled recipients are held in memory already, they are read beyond the capacity
+        List<String> lanes = dispatch(dispatcher.dispatch(Collections.emptyList(), Flux.fromIterable(scheduled),
+                new SendStatistics(scheduled.size())));
+        assertEquals(Arrays.asList("urgent", "bulk", "bulk", "bulk", "bulk"), lanes);
+    }
+
+    private static List<String> dispatch(String lanes, List<Recipient> recipients, int capacity) {
+        return dispatch(lanes, recipients, capacity, new SendStatistics(recipients.size()));
+    }
+
+    private static List<String> dispatch(String lanes, List<Recipient> recipients, int capacity,
+            SendStatistics stats) {
+        LaneDispatcher dispatcher = new LaneDispatcher(LaneDispatcher.parseLanes(lanes), capacity);
+        return dispatch(dispatcher.dispatch(dispatcher.split(Flux.fromIterable(recipients)), Flux.empty(), stats));
+    }
+
+    /**
+     * Ask for the recipients dispatched once all of them have been read (up to
+     * the capacity of the lanes), one at a time.
+     *
+     * @return Lane of each recipient dispatched, in order
+     */
+    private static List<String> dispatch(Flux<Recipient> recipients) {
+        List<String> dispatched = new ArrayList<>();
+        BaseSubscriber<Recipient> subscriber = new BaseSubscriber<Recipient>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // Nothing requested until the lanes are filled
+            }
+
+            @Override
+            protected void hookOnNext(Recipient recipient) {
+                dispatched.add(recipient.getLane() != null ? recipient.getLane() : "default");
+                request(1);
+            }
+        };
+        recipients.subscribe(subscriber);
+        subscriber.request(1);
+        return dispatched;
+    }
+}
@@ -0,0 +1,142 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MessageIdIndexTest {
+    /**
+     * Recipient long enough that the records fill several chunks of 16 MB
+     */
+    private static final String LONG_RECIPIENT = repeat('r', 40_000) + "@example.com";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void looksUpRecordsAfterReopen() throws IOException {
+        Path file = directory.resolve("index");
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            index.record("id-1", "a@example.com", 1L);
+            index.record("id-2", "b@example.com,c@example.com", 2L);
+            assertEquals("a@example.com", index.lookup("id-1").getRecipient());
+            index.record("id-3", "d@example.com", 3L);
+            assertEquals(3L, index.lookup("id-3").getSentAt());
+        }
+        try (MessageIdIndex index = MessageIdIndex.open(file, true)) {
+            assertEquals(3, index.size());
+            MessageIdIndex.Entry entry = index.lookup("id-2");
+            assertEquals("id-2", entry.getMessageId());
+            assertEquals("b@example.com,c@example.com", entry.getRecipient());
+            assertEquals(2L, entry.getSentAt());
+            assertNull(index.lookup("id-4"));
+        }
+    }
+
+    @Test
+    void appendsAfterExistingRecords() throws IOException {
+        Path file = directory.resolve("index");
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            index.record("id-1", "a@example.com", 1L);
+        }
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            index.record("id-2", "b@example.com", 2L);
+        }
+        try (MessageIdIndex index = MessageIdIndex.open(file, true)) {
+            assertEquals(2, index.size());
+            assertEquals("a@example.com", index.lookup("id-1").getRecipient());
+            assertEquals("b@example.com", index.lookup("id-2").getRecipient());
+        }
+    }
+
+    @Test
+    void spansSeveralChunks() throws IOException {
+        Path file = directory.resolve("index");
+        int records = 1_000;
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            for (int i = 0; i < records / 2; i++) {
+                index.record("id-" + i, i + LONG_RECIPIENT, i);
+            }
+            // Lookups while appending grow the table as records are added
+            assertNotNull(index.lookup("id-0"));
+            for (int i = records / 2; i < records; i++) {
+                index.record("id-" + i, i + LONG_RECIPIENT, i);
+            }
+            for (int i = 0; i < records; i++) {
+                assertEquals(i + LONG_RECIPIENT, index.lookup("id-" + i).getRecipient());
+            }
+        }
+        // No record spans two chunks
+        try (MessageIdIndex index = MessageIdIndex.open(file, true)) {
+            assertEquals(records, index.size());
+            for (int i = 0; i < records; i++) {
+                MessageIdIndex.Entry entry = index.lookup("id-" + i);
+                assertEquals(i + LONG_RECIPIENT, entry.getRecipient());
+                assertEquals(i, entry.getSentAt());
+            }
+        }
+    }
+
+    @Test
+    void growsTableWhenMovingToNextChunk() throws IOException {
+        Path file = directory.resolve("index");
+        // 512 records of 32760 bytes leave 4096 bytes in the first chunk, so
+        // the next record moves to the second chunk while the table of 1024
+        // slots grows
+        String recipient = repeat('r', 32760 - 2 - 7 - 2 - 8);
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            index.record("id-0000", recipient, 0);
+            assertNotNull(index.lookup("id-0000"));
+            for (int i = 1; i < 600; i++) {
+                index.record(String.format("id-%04d", i), recipient, i);
+            }
+            assertEquals(600, index.size());
+            assertEquals(512L, index.lookup("id-0512").getSentAt());
+        }
+        try (MessageIdIndex index = MessageIdIndex.open(file, true)) {
+            assertEquals(600, index.size());
+            for (int i = 0; i < 600; i++) {
+                assertEquals(i, index.lookup(String.format("id-%04d", i)).getSentAt());
+            }
+        }
+    }
+
+    @Test
+    void ignoresRecordCutShort() throws IOException {
+        Path file = directory.resolve("index");
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            index.record("id-1", "a@example.com", 1L);
+        }
+        long size = Files.size(file);
+        // Message id length and part of it, as left by a crash
+        Files.write(file, new byte[] { 0, 40, 'i', 'd', '-' }, StandardOpenOption.APPEND);
+        try (MessageIdIndex index = MessageIdIndex.open(file, true)) {
+            assertEquals(1, index.size());
+            assertEquals("a@example.com", index.lookup("id-1").getRecipient());
+        }
+        try (MessageIdIndex index = MessageIdIndex.open(file, false)) {
+            assertEquals(1, index.size());
+            index.record("x", "b@example.com", 2L);
+        }
+        assertEquals(size + 2 + 1 + 2 + 13 + 8, Files.size(file));
+        try (MessageIdIndex index = MessageIdIndex.open(file, true)) {
+            assertEquals(2, index.size());
+            assertEquals("b@example.com", index.lookup("x").getRecipient());
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
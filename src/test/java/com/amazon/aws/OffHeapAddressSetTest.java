@@ -0,0 +1,44 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapAddressSetTest {
+
+    @Test
+    void addsEachAddressOnce() {
+        OffHeapAddressSet set = new OffHeapAddressSet(10);
+        assertTrue(set.add("alice@example.com"));
+        assertFalse(set.add("alice@example.com"));
+        assertTrue(set.add("bob@example.com"));
+        assertEquals(2, set.size());
+        assertTrue(set.contains("alice@example.com"));
+        assertTrue(set.contains("bob@example.com"));
+        assertFalse(set.contains("carol@example.com"));
+    }
+
+    @Test
+    void growsBeyondExpectedSize() {
+        OffHeapAddressSet set = new OffHeapAddressSet(1);
+        for (int i = 0; i < 200_000; i++) {
+            assertTrue(set.add("user" + i + "@example.com"));
+        }
+        assertEquals(200_000, set.size());
+        for (int i = 0; i < 200_000; i++) {
+            assertTrue(set.contains("user" + i + "@example.com"));
+            assertFalse(set.contains("other" + i + "@example.com"));
+        }
+    }
+
+    @Test
+    void comparesAddressesAsGiven() {
+        OffHeapAddressSet set = new OffHeapAddressSet(10);
+        set.add("user@example.com");
+        assertFalse(set.contains("User@example.com"));
+        assertTrue(set.add("user@example.com\u00e9"));
+        assertTrue(set.contains("user@example.com\u00e9"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapBloomFilterTest {
+    private static final int ADDRESSES = 100_000;
+
+    @Test
+    void hasNoFalseNegatives() {
+        OffHeapBloomFilter filter = new OffHeapBloomFilter(ADDRESSES, 0.01);
+        for (int i = 0; i < ADDRESSES; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+        for (int i = 0; i < ADDRESSES; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"));
+        }
+    }
+
+    @Test
+    void keepsFalsePositiveRate() {
+        OffHeapBloomFilter filter = new OffHeapBloomFilter(ADDRESSES, 0.01);
+        for (int i = 0; i < ADDRESSES; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < ADDRESSES; i++) {
+            if (filter.mightContain("other" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < ADDRESSES * 0.02, "False positives: " + falsePositives);
+    }
+
+    @Test
+    void sizesForFalsePositiveRate() {
+        OffHeapBloomFilter filter = new OffHeapBloomFilter(ADDRESSES, 0.01);
+        // Around 9.6 bits per address and 7 hashes for 1%
+        assertEquals(9.6, (double) filter.getBits() / ADDRESSES, 0.1);
+        assertEquals(7, filter.getHashes());
+        assertEquals(0, filter.getBits() % Long.SIZE);
+    }
+}
@@ -0,0 +1,62 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ResourceUsageTest {
+    private static final int ALLOCATED_BYTES = 16 << 20;
+
+    private static volatile byte[] sink;
+
+    @Test
+    void countsBytesAllocatedByThreads() throws InterruptedException {
+        ResourceUsage usage = ResourceUsage.start();
+        allocate();
+        Thread thread = new Thread(ResourceUsageTest::allocate);
+        thread.start();
+        thread.join();
+        usage.finish();
+        if (usage.getAllocatedBytes() >= 0) {
+            // Only the bytes of this thread, the other one has finished
+            assertTrue(usage.getAllocatedBytes() >= ALLOCATED_BYTES, "Allocated: " + usage.getAllocatedBytes());
+        }
+    }
+
+    @Test
+    void ignoresThreadsFinishedWhileMeasuring() throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            allocate();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        Thread.sleep(100);
+        ResourceUsage usage = ResourceUsage.start();
+        thread.join();
+        usage.finish();
+        assertTrue(usage.getAllocatedBytes() >= -1);
+        if (usage.getAllocatedBytes() >= 0) {
+            assertTrue(usage.getAllocatedBytes() < ALLOCATED_BYTES, "Allocated: " + usage.getAllocatedBytes());
+        }
+    }
+
+    @Test
+    void measuresHeapAndGarbageCollections() {
+        ResourceUsage usage = ResourceUsage.start();
+        allocate();
+        usage.finish();
+        assertTrue(usage.getPeakHeapBytes() > 0);
+        assertTrue(usage.getGcCount() >= 0);
+        assertTrue(usage.getGcMillis() >= 0);
+    }
+
+    private static void allocate() {
+        for (int i = 0; i < 16; i++) {
+            sink = new byte[ALLOCATED_BYTES / 16];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RunReportTest {
+    private static final String TEXT = "say \"hi\", \\ back\nslash \u0001 \u00e9";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsJsonWritten() throws IOException {
+        RunReport read = writeAndRead("report.json");
+        assertEquals(1234.5, read.getNumber(RunReport.FIELD_THROUGHPUT));
+        assertEquals(10.0, read.getNumber(RunReport.FIELD_EMAILS_SENT));
+        assertEquals(TEXT, read.get("text"));
+        assertNull(read.getNumber("text"));
+    }
+
+    @Test
+    void readsCsvWritten() throws IOException {
+        RunReport read = writeAndRead("report.csv");
+        assertEquals(1234.5, read.getNumber(RunReport.FIELD_THROUGHPUT));
+        assertEquals(10.0, read.getNumber(RunReport.FIELD_EMAILS_SENT));
+        assertEquals(TEXT, read.get("text"));
+    }
+
+    @Test
+    void readsJsonMembers() throws IOException {
+        Path path = directory.resolve("report.json");
+        write(path, "{\"a\": \"\\u0041\\u00E9\", \"b\": true, \"c\": null, \"d\": -2}");
+        RunReport report = RunReport.read(path);
+        assertEquals("A\u00e9", report.get("a"));
+        assertEquals("true", report.get("b"));
+        assertNull(report.get("c"));
+        assertEquals(-2.0, report.getNumber("d"));
+    }
+
+    @Test
+    void rejectsInvalidReports() throws IOException {
+        Path path = directory.resolve("report.json");
+        for (String json : new String[] { "[1]", "{\"a\": {\"b\": 1}}", "{\"a\": [1]}", "{\"a\": \"\\u00\"}",
+                "{\"a\": \"\\u00zz\"}", "{\"a\": 1" }) {
+            write(path, json);
+            assertThrows(IllegalArgumentException.class, () -> RunReport.read(path), json);
+        }
+        Path csv = directory.resolve("report.csv");
+        write(csv, "a,b\n1\n");
+        assertThrows(IllegalArgumentException.class, () -> RunReport.read(csv));
+    }
+
+    private RunReport writeAndRead(String name) throws IOException {
+        RunReport report = new RunReport();
+        report.put(RunReport.FIELD_THROUGHPUT, 1234.5);
+        report.put(RunReport.FIELD_EMAILS_SENT, 10);
+        report.put("text", TEXT);
+        Path path = directory.resolve(name);
+        report.write(path);
+        return RunReport.read(path);
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,148 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import reactor.core.publisher.Flux;
+
+class ScheduledSendsTest {
+    private static final String HASH = "0123456789abcdef";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path directory;
+
+    private final GracefulShutdown shutdown = new GracefulShutdown(Duration.ofSeconds(1));
+
+    @Test
+    void resumesPendingEmailsOfTheJournal() throws IOException {
+        Path journal = directory.resolve("journal");
+        long sendAt = System.currentTimeMillis() + 200;
+        write(journal, "C " + HASH, "S 0 " + sendAt + " - a@example.com", "S 1 " + sendAt + " bulk b@example.com",
+                "S 2 " + sendAt + " - c@example.com", "F 0", "S 3");
+        try (ScheduledSends scheduled = ScheduledSends.open(journal, HASH, true, shutdown)) {
+            assertEquals(2, scheduled.getResumed());
+            // Compacted to the pending emails
+            assertEquals(Arrays.asList("C " + HASH, "S 1 " + sendAt + " bulk b@example.com",
+                    "S 2 " + sendAt + " - c@example.com"), Files.readAllLines(journal));
+            List<Recipient> recipients = scheduled.schedule(Flux.empty()).collectList().block(TIMEOUT);
+            assertEquals(2, recipients.size());
+            Recipient bulk = recipients.get(0).getLane() != null ? recipients.get(0) : recipients.get(1);
+            assertEquals("b@example.com", bulk.getAddress());
+            assertEquals("bulk", bulk.getLane());
+            assertEquals(sendAt, bulk.getSendAt());
+            assertTrue(System.currentTimeMillis() >= sendAt);
+            recipients.forEach(scheduled::finished);
+            assertEquals(0, scheduled.getPending());
+        }
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void resendsEmailsInFlightWhenResumed() throws IOException {
+        Path journal = directory.resolve("journal");
+        Recipient later = new Recipient("later@example.com", System.currentTimeMillis() + 200, null);
+        Recipient now = new Recipient("now@example.com", 0, null);
+        try (ScheduledSends scheduled = ScheduledSends.open(journal, HASH, false, shutdown)) {
+            List<Recipient> recipients = scheduled.schedule(Flux.just(later, now)).collectList().block(TIMEOUT);
+            assertEquals(Arrays.asList(now, later), recipients);
+            // Not finished, as if the process was killed while sending it
+            assertEquals(1, scheduled.getPending());
+        }
+        try (ScheduledSends scheduled = ScheduledSends.open(journal, HASH, true, shutdown)) {
+            assertEquals(1, scheduled.getResumed());
+            List<Recipient> recipients = scheduled.schedule(Flux.empty()).collectList().block(TIMEOUT);
+            assertEquals(1, recipients.size());
+            assertEquals("later@example.com", recipients.get(0).getAddress());
+            scheduled.finished(recipients.get(0));
+        }
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void refusesPendingEmailsNotResumed() throws IOException {
+        Path journal = directory.resolve("journal");
+        write(journal, "C " + HASH, "S 0 " + (System.currentTimeMillis() + 60_000) + " - a@example.com");
+        assertThrows(IllegalStateException.class, () -> ScheduledSends.open(journal, HASH, false, shutdown));
+        assertThrows(IllegalStateException.class, () -> ScheduledSends.open(journal, "other", true, shutdown));
+        assertTrue(Files.exists(journal));
+    }
+
+    @Test
+    void opensJournalOnlyWhenSchedulingOnDemand() throws IOException {
+        Path journal = directory.resolve("journal");
+        write(journal, "C other", "S 0 " + (System.currentTimeMillis() + 60_000) + " - a@example.com");
+        SendEmailInfo info = new SendEmailInfo("SMTP", "sender@example.com", "to@example.com", "Subject", "Body");
+        Recipient now = new Recipient("now@example.com", 0, null);
+        try (ScheduledSends scheduled = ScheduledSends.onDemand(journal, info, shutdown)) {
+            assertEquals(Arrays.asList(now), scheduled.schedule(Flux.just(now)).collectList().block(TIMEOUT));
+        }
+        assertTrue(Files.exists(journal));
+        Recipient later = new Recipient("later@example.com", System.currentTimeMillis() + 60_000, null);
+        try (ScheduledSends scheduled = ScheduledSends.onDemand(journal, info, shutdown)) {
+            assertThrows(IllegalStateException.class, () -> scheduled.schedule(Flux.just(later)).blockLast(TIMEOUT));
+        }
+        assertEquals(2, Files.readAllLines(journal).size());
+    }
+
+    @Test
+    void schedulesOnDemandWithoutJournal() throws IOException {
+        Path journal = directory.resolve("journal");
+        SendEmailInfo info = new SendEmailInfo("SMTP", "sender@example.com", "to@example.com", "Subject", "Body");
+        Recipient later = new Recipient("later@example.com", System.currentTimeMillis() + 200, null);
+        try (ScheduledSends scheduled = ScheduledSends.onDemand(journal, info, shutdown)) {
+            List<Recipient> recipients = scheduled.schedule(Flux.just(later)).collectList().block(TIMEOUT);
+            assertEquals(Arrays.asList(later), recipients);
+            assertEquals(Arrays.asList("C " + ScheduledSends.contentHash(info),
+                    "S 0 " + later.getSendAt() + " - later@example.com"), Files.readAllLines(journal));
+            scheduled.finished(later);
+        }
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void deletesJournalWithoutPendingEmails() throws IOException {
+        Path journal = directory.resolve("journal");
+        write(journal, "C other", "S 0 12 - a@example.com", "F 0");
+        try (ScheduledSends scheduled = ScheduledSends.open(journal, HASH, false, shutdown)) {
+            assertEquals(0, scheduled.getResumed());
+            assertFalse(Files.exists(journal));
+        }
+    }
+
+    @Test
+    void hashesContentOfTheEmail() throws IOException {
+        SendEmailInfo info = new SendEmailInfo("SMTP", "sender@example.com", "to@example.com", "Subject", "Body");
+        String hash = ScheduledSends.contentHash(info);
+        assertEquals(64, hash.length());
+        info.setTo("other@example.com");
+        assertEquals(hash, ScheduledSends.contentHash(info));
+        info.setSubject("Other subject");
+        String subjectHash = ScheduledSends.contentHash(info);
+        assertNotEquals(hash, subjectHash);
+        Path attachment = directory.resolve("attachment.txt");
+        Files.write(attachment, "one".getBytes(StandardCharsets.UTF_8));
+        info.setAttachments(attachment.toString());
+        String attachmentHash = ScheduledSends.contentHash(info);
+        Files.write(attachment, "two".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(attachmentHash, ScheduledSends.contentHash(info));
+    }
+
+    private static void write(Path journal, String... lines) throws IOException {
+        Files.write(journal, (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,68 @@
+package com.amazon.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+    private static final long TICK = 100;
+
+    @Test
+    void expiresValuesAtTheirDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.add(250, "a");
+        wheel.add(300, "b");
+        assertEquals(2, wheel.size());
+        assertTrue(wheel.advance(200).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), sorted(wheel.advance(300)));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void expiresPastDeadlinesOnTheNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 1_000);
+        wheel.add(500, "past");
+        assertTrue(wheel.advance(1_050).isEmpty());
+        assertEquals(Collections.singletonList("past"), wheel.advance(1_100));
+    }
+
+    @Test
+    void cascadesValuesFromHigherLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        long[] ticks = { 1, 63, 64, 65, 4_095, 4_096, 4_097, 262_143, 262_144, 300_001 };
+        for (long tick : ticks) {
+            wheel.add(tick * TICK, tick);
+        }
+        int expired = 0;
+        for (long now = 1; now <= 300_001; now++) {
+            List<Long> values = wheel.advance(now * TICK);
+            for (Long value : values) {
+                assertEquals(now, value.longValue(), "Expired at tick " + now);
+            }
+            expired += values.size();
+        }
+        assertEquals(ticks.length, expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advancesSeveralTicksAtOnce() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 0);
+        for (int i = 1; i <= 1_000; i++) {
+            wheel.add(i * 1_000L, i);
+        }
+        assertEquals(500, wheel.advance(500_000).size());
+        assertEquals(500, wheel.advance(2_000_000).size());
+        assertEquals(0, wheel.size());
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(List<T> values) {
+        Collections.sort(values);
+        return values;
+    }
+}